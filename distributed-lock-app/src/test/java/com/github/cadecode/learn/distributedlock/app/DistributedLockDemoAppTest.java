@@ -1,16 +1,45 @@
 package com.github.cadecode.learn.distributedlock.app;
 
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
 
 /**
  * @author Cade Li
  * @date 2022/2/13
  * @description 测试类
+ * Redis 锁的组件启动时就会连接 Redis，测试前在随机端口启动嵌入式 Redis，密码与 application.yml 一致
  */
 @SpringBootTest
 public class DistributedLockDemoAppTest {
 
+    private static RedisServer redisServer;
+
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = RedisServer.newRedisServer()
+                .port(port)
+                .setting("requirepass redisAdm")
+                .build();
+        redisServer.start();
+        registry.add("spring.redis.port", () -> port);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        redisServer.stop();
+    }
+
     @Test
     public void test() {
 
@@ -1,5 +1,6 @@
 package com.github.cadecode.learn.distributedlock.common;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -41,4 +42,30 @@ public interface DistributedLock {
      */
     void unlock(String name);
 
+    /**
+     * 异步加锁，获取到锁时返回锁句柄
+     *
+     * @param name 锁名称
+     * @return 锁句柄
+     */
+    CompletableFuture<LockHandle> lockAsync(String name);
+
+    /**
+     * 异步加锁（支持超时）
+     *
+     * @param name     锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 锁句柄，超时返回 null
+     */
+    CompletableFuture<LockHandle> tryLockAsync(String name, long timeout, TimeUnit timeUnit);
+
+    /**
+     * 异步释放锁
+     *
+     * @param handle 加锁返回的锁句柄
+     * @return 释放完成
+     */
+    CompletableFuture<Void> unlockAsync(LockHandle handle);
+
 }
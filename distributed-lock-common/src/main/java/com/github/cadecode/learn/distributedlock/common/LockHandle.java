@@ -0,0 +1,23 @@
+package com.github.cadecode.learn.distributedlock.common;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/1
+ * @description 锁句柄，异步加锁时由句柄代替线程持有锁
+ * 加锁、释放可以在不同线程中完成，同一个句柄不可重入，释放时需要传入加锁返回的句柄
+ */
+@Getter
+@RequiredArgsConstructor
+public class LockHandle {
+    /**
+     * 锁名称
+     */
+    private final String name;
+    /**
+     * 持有者标识
+     */
+    private final String token;
+}
@@ -1,7 +1,9 @@
 package com.github.cadecode.learn.distributedlock.mysql;
 
 import com.github.cadecode.learn.distributedlock.common.DistributedLock;
+import com.github.cadecode.learn.distributedlock.common.LockHandle;
 import lombok.*;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
@@ -11,8 +13,16 @@ import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * @author Cade Li
@@ -21,12 +31,43 @@ import java.util.function.Function;
  */
 @Component
 @RequiredArgsConstructor
-public class DatabaseLock implements DistributedLock {
+public class DatabaseLock implements DistributedLock, DisposableBean {
+
+    /**
+     * 异步加锁线程数，等待 for update 时占用线程和连接，不宜超过连接池大小
+     */
+    private static final int ASYNC_THREADS = 8;
+
+    /**
+     * 异步加锁排队上限，超过时拒绝
+     */
+    private static final int ASYNC_QUEUE_SIZE = 256;
+
+    /**
+     * 异步 tryLock 的 nowait 重试间隔（毫秒）
+     */
+    private static final long TRY_LOCK_INTERVAL = 50;
 
     private final DataSource dataSource;
 
     private final ThreadLocal<Map<String, LockContent>> contentMapLocal = ThreadLocal.withInitial(HashMap::new);
 
+    private final ThreadPoolExecutor asyncExecutor = new ThreadPoolExecutor(ASYNC_THREADS, ASYNC_THREADS,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(ASYNC_QUEUE_SIZE), r -> {
+        Thread thread = new Thread(r, "database-lock-async");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 异步 tryLock 的重试线程，只执行 nowait 查询，不会阻塞在行锁上
+     */
+    private final ScheduledThreadPoolExecutor retryExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "database-lock-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @Override
     public void lock(String name) {
         if (checkReentrant(name)) {
@@ -66,24 +107,13 @@ public class DatabaseLock implements DistributedLock {
             storeLock(name, null, true);
             return true;
         }
-        Connection connection = createConnection(name);
-        LockDao lockDao = new LockDao(connection);
-        // 尝试的总时间
-        long totalTime = timeUnit.toMillis(timeout);
-        // 当前时间
-        long current = System.currentTimeMillis();
-        while (System.currentTimeMillis() - current <= totalTime) {
-            try {
-                getLock(name, lockDao, lockDao::selectForUpdateNoWait);
-            } catch (Exception e) {
-                continue;
-            }
-            // 保存锁内容
-            storeLock(name, connection, false);
-            return true;
+        Connection connection = tryAcquire(name, timeUnit.toMillis(timeout));
+        if (Objects.isNull(connection)) {
+            return false;
         }
-        clearConnection(connection);
-        return false;
+        // 保存锁内容
+        storeLock(name, connection, false);
+        return true;
     }
 
     @Override
@@ -108,6 +138,188 @@ public class DatabaseLock implements DistributedLock {
         }
     }
 
+    /**
+     * 异步加锁，在有界线程池中执行 for update，连接由返回的句柄持有
+     *
+     * @param name 锁名称
+     * @return 锁句柄
+     */
+    @Override
+    public CompletableFuture<LockHandle> lockAsync(String name) {
+        checkName(name);
+        return submit(() -> {
+            Connection connection = createConnection(name);
+            LockDao lockDao = new LockDao(connection);
+            try {
+                getLock(name, lockDao, lockDao::selectForUpdate);
+            } catch (Exception e) {
+                clearConnection(connection);
+                throw e;
+            }
+            return new ConnectionLockHandle(name, connection);
+        });
+    }
+
+    /**
+     * 异步在一段时间内加锁，超时返回 null
+     * 由重试线程定时执行 nowait 查询，不占用异步加锁线程
+     *
+     * @param name     锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 锁句柄
+     */
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String name, long timeout, TimeUnit timeUnit) {
+        checkName(name);
+        long deadline = System.currentTimeMillis() + timeUnit.toMillis(timeout);
+        CompletableFuture<LockHandle> future = new CompletableFuture<>();
+        try {
+            retryExecutor.execute(() -> tryAcquireAsync(name, null, deadline, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 异步释放锁，在调用线程中提交事务并关闭句柄持有的连接
+     * 不能交给异步加锁线程池，线程都阻塞在 for update 上时，释放任务会一直排队，持有者无法提交，造成死锁
+     *
+     * @param handle 加锁返回的锁句柄
+     * @return 释放完成
+     */
+    @Override
+    public CompletableFuture<Void> unlockAsync(LockHandle handle) {
+        if (!(handle instanceof ConnectionLockHandle)) {
+            return failedFuture(new IllegalArgumentException("锁句柄不是 DatabaseLock 创建的"));
+        }
+        ConnectionLockHandle lockHandle = (ConnectionLockHandle) handle;
+        if (!lockHandle.released.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            clearConnection(lockHandle.getConnection());
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void destroy() {
+        asyncExecutor.shutdownNow();
+        retryExecutor.shutdownNow();
+    }
+
+    /**
+     * 在一段时间内使用 nowait 循环尝试加锁
+     *
+     * @param name      锁名称
+     * @param totalTime 尝试的总时间（毫秒）
+     * @return 加锁成功的连接，超时返回 null
+     */
+    private Connection tryAcquire(String name, long totalTime) {
+        Connection connection = createConnection(name);
+        LockDao lockDao = new LockDao(connection);
+        // 当前时间
+        long current = System.currentTimeMillis();
+        while (System.currentTimeMillis() - current <= totalTime) {
+            try {
+                getLock(name, lockDao, lockDao::selectForUpdateNoWait);
+            } catch (Exception e) {
+                continue;
+            }
+            return connection;
+        }
+        clearConnection(connection);
+        return null;
+    }
+
+    /**
+     * 使用 nowait 尝试一次加锁，失败时由重试线程延迟后再次尝试，整个过程复用同一个连接
+     *
+     * @param name       锁名称
+     * @param connection 上次尝试使用的连接，首次为 null
+     * @param deadline   截止时间
+     * @param future     加锁结果
+     */
+    private void tryAcquireAsync(String name, Connection connection, long deadline,
+                                 CompletableFuture<LockHandle> future) {
+        Connection current = connection;
+        try {
+            if (Objects.isNull(current)) {
+                current = createConnection(name);
+            }
+            if (tryGetLock(name, current)) {
+                // 调用方已取消时释放
+                if (!future.complete(new ConnectionLockHandle(name, current))) {
+                    clearConnection(current);
+                }
+                return;
+            }
+            long remain = deadline - System.currentTimeMillis();
+            if (remain <= 0 || future.isDone()) {
+                clearConnection(current);
+                future.complete(null);
+                return;
+            }
+            Connection held = current;
+            retryExecutor.schedule(() -> tryAcquireAsync(name, held, deadline, future),
+                    Math.min(TRY_LOCK_INTERVAL, remain), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            try {
+                clearConnection(current);
+            } catch (Exception ignored) {
+                // 连接不可用，以原异常为准
+            }
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 使用 nowait 尝试一次加锁
+     *
+     * @param name       锁名称
+     * @param connection 数据库连接
+     * @return 是否加锁成功
+     */
+    private boolean tryGetLock(String name, Connection connection) {
+        LockDao lockDao = new LockDao(connection);
+        try {
+            getLock(name, lockDao, lockDao::selectForUpdateNoWait);
+        } catch (Exception e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 提交异步任务，线程池已满时返回失败的 future
+     *
+     * @param task 任务
+     * @return 任务结果
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, asyncExecutor);
+        } catch (RejectedExecutionException e) {
+            return failedFuture(e);
+        }
+    }
+
+    /**
+     * 以异常完成的 future
+     *
+     * @param e 异常
+     * @return future
+     */
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
     /**
      * 检查重入
      *
@@ -115,14 +327,23 @@ public class DatabaseLock implements DistributedLock {
      * @return 是否重入
      */
     private boolean checkReentrant(String name) {
-        if (Objects.isNull(name)) {
-            throw new RuntimeException("锁名称不能为空");
-        }
+        checkName(name);
         // 判断是否重入
         LockContent lockContent = contentMapLocal.get().get(name);
         return Objects.nonNull(lockContent);
     }
 
+    /**
+     * 检查锁名称
+     *
+     * @param name 锁名称
+     */
+    private void checkName(String name) {
+        if (Objects.isNull(name)) {
+            throw new RuntimeException("锁名称不能为空");
+        }
+    }
+
     /**
      * 保存锁内容到 ThreadLocal
      *
@@ -207,6 +428,25 @@ public class DatabaseLock implements DistributedLock {
         private Integer count;
     }
 
+    /**
+     * 异步加锁的句柄
+     * 维护持有锁的 Connection，释放时提交事务
+     */
+    @Getter
+    private static class ConnectionLockHandle extends LockHandle {
+        /**
+         * 数据库连接
+         */
+        private final Connection connection;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ConnectionLockHandle(String name, Connection connection) {
+            super(name, UUID.randomUUID().toString());
+            this.connection = connection;
+        }
+    }
+
     /**
      * 锁记录 DAO
      * 增加或查询锁记录，其中 name 为主键
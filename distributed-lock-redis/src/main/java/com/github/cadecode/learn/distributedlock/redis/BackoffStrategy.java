@@ -0,0 +1,67 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/22
+ * @description 抢锁失败后的退避策略
+ */
+public interface BackoffStrategy {
+
+    /**
+     * 开始一轮等待，每个等待锁的线程使用单独的 Backoff
+     *
+     * @return Backoff
+     */
+    Backoff newBackoff();
+
+    /**
+     * 根据类型创建退避策略
+     *
+     * @param type 类型
+     * @param base 基础等待时间（毫秒）
+     * @param cap  最大等待时间（毫秒）
+     * @return 退避策略
+     */
+    static BackoffStrategy of(Type type, long base, long cap) {
+        switch (type) {
+            case FIXED:
+                return new FixedBackoffStrategy(base);
+            case DECORRELATED:
+                return new DecorrelatedJitterBackoffStrategy(base, cap);
+            case EXPONENTIAL:
+            default:
+                return new ExponentialBackoffStrategy(base, cap);
+        }
+    }
+
+    /**
+     * 单次等待过程
+     */
+    interface Backoff {
+
+        /**
+         * 下一次重试前的等待时间
+         *
+         * @return 等待时间（毫秒）
+         */
+        long nextDelay();
+    }
+
+    /**
+     * 退避策略类型
+     */
+    enum Type {
+        /**
+         * 固定间隔
+         */
+        FIXED,
+        /**
+         * 指数退避，全随机抖动
+         */
+        EXPONENTIAL,
+        /**
+         * 去相关抖动
+         */
+        DECORRELATED
+    }
+}
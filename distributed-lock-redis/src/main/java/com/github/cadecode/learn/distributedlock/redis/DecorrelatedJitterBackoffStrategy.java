@@ -0,0 +1,33 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/22
+ * @description 去相关抖动退避
+ * 等待时间在 [base, 上次等待时间 * 3] 中随机选取，不超过 cap
+ */
+@RequiredArgsConstructor
+public class DecorrelatedJitterBackoffStrategy implements BackoffStrategy {
+
+    private final long base;
+
+    private final long cap;
+
+    @Override
+    public Backoff newBackoff() {
+        return new Backoff() {
+            private long last = base;
+
+            @Override
+            public long nextDelay() {
+                long upper = Math.max(base, Math.min(cap, last * 3));
+                last = ThreadLocalRandom.current().nextLong(base, upper + 1);
+                return last;
+            }
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/22
+ * @description 指数退避，全随机抖动
+ * 等待时间在 [0, min(cap, base * 2^n)] 中随机选取，避免等待线程同时重试
+ */
+@RequiredArgsConstructor
+public class ExponentialBackoffStrategy implements BackoffStrategy {
+
+    private final long base;
+
+    private final long cap;
+
+    @Override
+    public Backoff newBackoff() {
+        return new Backoff() {
+            private int attempt;
+
+            @Override
+            public long nextDelay() {
+                // 限制位移次数，防止溢出
+                long limit = Math.min(cap, base << Math.min(attempt++, 30));
+                return ThreadLocalRandom.current().nextLong(limit + 1);
+            }
+        };
+    }
+}
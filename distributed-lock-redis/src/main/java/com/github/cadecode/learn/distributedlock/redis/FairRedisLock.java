@@ -0,0 +1,123 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import com.github.cadecode.learn.distributedlock.common.DistributedLock;
+import com.github.cadecode.learn.distributedlock.common.LockHandle;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/25
+ * @description Redis 版公平分布式锁
+ * 等待者按到达顺序在 Redis 等待队列中领取排号，释放锁时直接移交给队首等待者，保证先来先得
+ * 每个等待者带有超时时间，重试时刷新，节点宕机或放弃等待的等待者超时后自动出队
+ * 同一个锁名称不要混用 RedisLock 和 FairRedisLock
+ * 内部的 RedisLock 不是 Spring 管理的 bean，初始化和销毁由本类转发
+ */
+@Component
+public class FairRedisLock implements DistributedLock, InitializingBean, DisposableBean {
+
+    private final RedisLock delegate;
+
+    public FairRedisLock(StringRedisTemplate redisTemplate, RedisLockProperties properties,
+                         RedisLockNotifier notifier, RedisLockWatchdog watchdog, BackoffStrategy backoffStrategy,
+                         RedisLockBatcher batcher, RedisLockAsyncExecutor asyncExecutor, RedisLockTracker tracker,
+                         RedisLockMetrics metrics) {
+        this.delegate = new RedisLock(redisTemplate, properties, notifier, watchdog, backoffStrategy, batcher,
+                asyncExecutor, tracker, metrics, true);
+    }
+
+    /**
+     * 阻塞加锁，按排队顺序获得锁
+     *
+     * @param name 锁名称
+     */
+    @Override
+    public void lock(String name) {
+        delegate.lock(name);
+    }
+
+    /**
+     * 尝试一次获取锁，锁空闲但有人排队时，锁会移交给队首等待者
+     *
+     * @param name 锁名称
+     * @return 是否获取到
+     */
+    @Override
+    public boolean tryLock(String name) {
+        return delegate.tryLock(name);
+    }
+
+    /**
+     * 排队等待一段时间，超时后退出队列
+     *
+     * @param name     锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 是否获取到
+     */
+    @Override
+    public boolean tryLock(String name, long timeout, TimeUnit timeUnit) {
+        return delegate.tryLock(name, timeout, timeUnit);
+    }
+
+    /**
+     * 释放锁，有等待者时移交给队首等待者
+     *
+     * @param name 锁名称
+     */
+    @Override
+    public void unlock(String name) {
+        delegate.unlock(name);
+    }
+
+    /**
+     * 异步排队加锁
+     *
+     * @param name 锁名称
+     * @return 锁句柄
+     */
+    @Override
+    public CompletableFuture<LockHandle> lockAsync(String name) {
+        return delegate.lockAsync(name);
+    }
+
+    /**
+     * 异步排队等待一段时间，超时后退出队列
+     *
+     * @param name     锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 锁句柄，超时返回 null
+     */
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String name, long timeout, TimeUnit timeUnit) {
+        return delegate.tryLockAsync(name, timeout, timeUnit);
+    }
+
+    /**
+     * 异步释放锁，有等待者时移交给队首等待者
+     *
+     * @param handle 加锁返回的锁句柄
+     * @return 释放完成
+     */
+    @Override
+    public CompletableFuture<Void> unlockAsync(LockHandle handle) {
+        return delegate.unlockAsync(handle);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        delegate.afterPropertiesSet();
+    }
+
+    @Override
+    public void destroy() {
+        delegate.destroy();
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/22
+ * @description 固定间隔退避
+ */
+@RequiredArgsConstructor
+public class FixedBackoffStrategy implements BackoffStrategy {
+
+    private final long delay;
+
+    @Override
+    public Backoff newBackoff() {
+        return () -> delay;
+    }
+}
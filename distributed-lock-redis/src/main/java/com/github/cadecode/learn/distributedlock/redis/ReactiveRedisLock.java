@@ -0,0 +1,416 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import com.github.cadecode.learn.distributedlock.common.LockHandle;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/2
+ * @description 响应式 Redis 分布式锁，基于 ReactiveStringRedisTemplate，不阻塞事件循环线程
+ * 与 RedisLock 使用相同的 key、频道和脚本，响应式服务和阻塞式服务可以竞争同一把锁
+ * 等待时订阅释放消息，收到消息立即重试，否则按退避时间 Mono.delay 后重试，续期使用 Flux.interval
+ * 开启排队移交时与 RedisLock 一样排队加锁，释放时移交给队首等待者，放弃等待时退出队列
+ * 锁由返回的句柄持有，不可重入
+ * 同一把锁的等待者共用一个释放频道订阅，使用引用计数维护
+ * 响应式连接无法在同一连接上发送 WAIT，不支持 ASYNC 以外的持久化级别，对这些锁名称加锁时返回错误
+ */
+@Slf4j
+@Component
+public class ReactiveRedisLock implements DisposableBean {
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    private final RedisLockProperties properties;
+
+    private final BackoffStrategy backoffStrategy;
+
+    private final ReactiveRedisMessageListenerContainer container;
+
+    private final Map<String, ReleaseSubscription> subscriptionMap = new ConcurrentHashMap<>();
+
+    public ReactiveRedisLock(ReactiveStringRedisTemplate redisTemplate, ReactiveRedisConnectionFactory connectionFactory,
+                             RedisLockProperties properties, BackoffStrategy backoffStrategy) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.backoffStrategy = backoffStrategy;
+        this.container = new ReactiveRedisMessageListenerContainer(connectionFactory);
+    }
+
+    /**
+     * 一直等待直到获取锁
+     *
+     * @param name 锁名称
+     * @return 锁句柄
+     */
+    public Mono<LockHandle> lock(String name) {
+        return acquire(name, Long.MAX_VALUE);
+    }
+
+    /**
+     * 尝试一次获取锁
+     *
+     * @param name 锁名称
+     * @return 锁句柄，未获取到时为空
+     */
+    public Mono<LockHandle> tryLock(String name) {
+        return acquire(name, 0);
+    }
+
+    /**
+     * 尝试在一段时间内获取锁
+     *
+     * @param name     锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 锁句柄，超时为空
+     */
+    public Mono<LockHandle> tryLock(String name, long timeout, TimeUnit timeUnit) {
+        return acquire(name, timeUnit.toMillis(timeout));
+    }
+
+    /**
+     * 释放锁，停止续期，校验持有者后删除 key 并发布释放消息，排队移交模式下移交给队首等待者
+     *
+     * @param handle 加锁返回的锁句柄
+     * @return 释放完成
+     */
+    public Mono<Void> unlock(LockHandle handle) {
+        if (!(handle instanceof ReactiveLockHandle)) {
+            return Mono.error(new IllegalArgumentException("lock handle is not created by ReactiveRedisLock"));
+        }
+        ReactiveLockHandle lockHandle = (ReactiveLockHandle) handle;
+        return Mono.defer(() -> {
+            if (!lockHandle.released.compareAndSet(false, true)) {
+                return Mono.empty();
+            }
+            lockHandle.getRenewal().dispose();
+            return release(lockHandle.getName(), lockHandle.getToken());
+        });
+    }
+
+    @Override
+    public void destroy() {
+        container.destroy();
+    }
+
+    /**
+     * 获取锁，第一次失败后才订阅释放消息
+     *
+     * @param name      锁名称
+     * @param totalTime 超时时间（毫秒），Long.MAX_VALUE 表示一直等待
+     * @return 锁句柄
+     */
+    private Mono<LockHandle> acquire(String name, long totalTime) {
+        if (Objects.isNull(name)) {
+            return Mono.error(new RuntimeException("lock name cannot be null"));
+        }
+        if (properties.durabilityOf(name) != RedisLockDurability.ASYNC) {
+            return Mono.error(new RuntimeException("reactive redis lock only supports durability ASYNC, key is " + name));
+        }
+        return Mono.defer(() -> {
+            String value = properties.getNodeId() + ":" + UUID.randomUUID();
+            long current = System.currentTimeMillis();
+            long deadline = totalTime > Long.MAX_VALUE - current ? Long.MAX_VALUE : current + totalTime;
+            // 需要等待时第一次尝试就加入等待队列
+            return tryAcquire(name, value, totalTime > 0).flatMap(ttl -> {
+                if (!ttl.isPresent()) {
+                    return Mono.just(createHandle(name, value));
+                }
+                if (totalTime <= 0 || (deadline != Long.MAX_VALUE
+                        && RedisLockSupport.leaseExceeds(properties, ttl.get(), totalTime))) {
+                    return Mono.when(signalInterest(name), abandon(name, value)).then(Mono.<LockHandle>empty());
+                }
+                // 超时、出错或取消时退出等待队列
+                return waitAcquire(name, value, deadline, ttl.get())
+                        .switchIfEmpty(abandon(name, value).then(Mono.<LockHandle>empty()))
+                        .onErrorResume(e -> abandon(name, value).then(Mono.<LockHandle>error(e)))
+                        .doOnCancel(() -> abandon(name, value).subscribe());
+            });
+        });
+    }
+
+    /**
+     * 订阅释放消息，循环等待并重试，订阅在结束或取消时释放
+     *
+     * @param name     锁名称
+     * @param value    锁的值
+     * @param deadline 截止时间
+     * @param firstTtl 第一次失败时锁的剩余有效期
+     * @return 锁句柄，超时为空
+     */
+    private Mono<LockHandle> waitAcquire(String name, String value, long deadline, long firstTtl) {
+        AtomicLong ttl = new AtomicLong(firstTtl);
+        // 等待期间是否收到过释放消息
+        AtomicBoolean released = new AtomicBoolean();
+        // 上次等待是否由释放消息结束
+        AtomicBoolean notified = new AtomicBoolean();
+        BackoffStrategy.Backoff backoff = backoffStrategy.newBackoff();
+        Sinks.Many<String> releases = Sinks.many().multicast().directBestEffort();
+        return Mono.using(() -> subscribeRelease(name, value, released, releases), subscription -> Mono
+                        .defer(() -> awaitRelease(name, deadline, ttl.get(), backoff, released, notified, releases))
+                        .then(Mono.defer(() -> tryAcquire(name, value, true)))
+                        .flatMap(result -> {
+                            if (result.isPresent()) {
+                                ttl.set(result.get());
+                                return Mono.<LockHandle>empty();
+                            }
+                            return Mono.just(createHandle(name, value));
+                        })
+                        .repeatWhenEmpty(rounds -> rounds.takeWhile(i -> canWait(deadline, ttl.get(), notified.get()))),
+                Disposable::dispose);
+    }
+
+    /**
+     * 订阅锁的释放频道，忽略请求消息和移交给其他等待者的消息
+     */
+    private Disposable subscribeRelease(String name, String value, AtomicBoolean released,
+                                        Sinks.Many<String> releases) {
+        String handoff = RedisLockNotifier.HANDOFF_PREFIX + value;
+        ReleaseSubscription subscription = retain(name);
+        Disposable disposable = subscription.messages.asFlux()
+                .filter(body -> !RedisLockNotifier.INTEREST_MESSAGE.equals(body))
+                .filter(body -> !body.startsWith(RedisLockNotifier.HANDOFF_PREFIX) || body.equals(handoff))
+                .subscribe(body -> {
+                    released.set(true);
+                    releases.tryEmitNext(body);
+                });
+        return Disposables.composite(disposable, () -> release(name));
+    }
+
+    /**
+     * 增加订阅引用，首次引用时订阅释放频道
+     *
+     * @param name 锁名称
+     * @return 订阅
+     */
+    private ReleaseSubscription retain(String name) {
+        return subscriptionMap.compute(name, (k, v) -> {
+            if (Objects.isNull(v)) {
+                Sinks.Many<String> messages = Sinks.many().multicast().directBestEffort();
+                Disposable channel = container.receive(ChannelTopic.of(RedisLockKeys.channel(k)))
+                        .map(ReactiveSubscription.Message::getMessage)
+                        .subscribe(messages::tryEmitNext);
+                v = new ReleaseSubscription(messages, channel);
+            }
+            v.count++;
+            return v;
+        });
+    }
+
+    /**
+     * 减少订阅引用，没有引用时取消订阅
+     *
+     * @param name 锁名称
+     */
+    private void release(String name) {
+        subscriptionMap.computeIfPresent(name, (k, v) -> {
+            if (--v.count > 0) {
+                return v;
+            }
+            v.channel.dispose();
+            return null;
+        });
+    }
+
+    /**
+     * 等待释放消息或退避时间到期，尝试期间已收到释放消息时立即返回
+     */
+    private Mono<Void> awaitRelease(String name, long deadline, long ttl, BackoffStrategy.Backoff backoff,
+                                    AtomicBoolean released, AtomicBoolean notified, Sinks.Many<String> releases) {
+        Mono<Void> interest = notified.get() ? Mono.empty() : signalInterest(name);
+        if (released.getAndSet(false)) {
+            notified.set(true);
+            return interest;
+        }
+        long remain = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+        Mono<Boolean> message = releases.asFlux().next().map(body -> true);
+        long delay = Math.max(RedisLockSupport.waitTime(backoff, ttl, remain), 0);
+        Mono<Boolean> timeout = Mono.delay(Duration.ofMillis(delay)).map(i -> false);
+        return interest.then(Mono.firstWithSignal(message, timeout))
+                .doOnNext(woken -> {
+                    notified.set(woken);
+                    released.set(false);
+                })
+                .then();
+    }
+
+    /**
+     * 是否继续等待，没有收到释放消息时锁在超时前不可能过期则放弃
+     */
+    private boolean canWait(long deadline, long ttl, boolean notified) {
+        if (deadline == Long.MAX_VALUE) {
+            return true;
+        }
+        long remain = deadline - System.currentTimeMillis();
+        return remain >= 0 && (notified || !RedisLockSupport.leaseExceeds(properties, ttl, remain));
+    }
+
+    /**
+     * 尝试设置 redis key，排队移交模式下使用排队加锁
+     *
+     * @param name  锁名称
+     * @param value 锁的值
+     * @param wait  失败后是否加入等待队列，只在排队移交模式下有效
+     * @return 设置成功为空，失败为锁的剩余有效期（毫秒）
+     */
+    private Mono<Optional<Long>> tryAcquire(String name, String value, boolean wait) {
+        boolean handoff = properties.isHandoff();
+        List<String> args = Arrays.asList(RedisLockSupport.acquireArgs(properties, handoff, name, value,
+                properties.getLeaseTime(), wait));
+        Flux<Long> result = handoff
+                ? redisTemplate.execute(RedisLockScripts.ACQUIRE_QUEUED, RedisLockSupport.queueKeys(name), args)
+                : redisTemplate.execute(RedisLockScripts.ACQUIRE, Collections.singletonList(name), args);
+        return result.next()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    /**
+     * 创建句柄并开始续期，每半个有效期续期一次，续期失败时停止
+     *
+     * @param name  锁名称
+     * @param value 锁的值
+     * @return 锁句柄
+     */
+    private LockHandle createHandle(String name, String value) {
+        long leaseTime = properties.getLeaseTime();
+        Disposable renewal = Flux.interval(Duration.ofMillis(leaseTime / 2))
+                .concatMap(i -> renew(name, value))
+                .takeWhile(renewed -> renewed)
+                .doOnComplete(() -> log.warn("renew lock fail, key is {}", name))
+                .subscribe();
+        return new ReactiveLockHandle(name, value, renewal);
+    }
+
+    /**
+     * 释放锁，排队移交模式下有等待者时移交给队首等待者
+     *
+     * @param name  锁名称
+     * @param value 锁的值
+     * @return 释放完成
+     */
+    private Mono<Void> release(String name, String value) {
+        if (properties.isHandoff()) {
+            return redisTemplate.execute(RedisLockScripts.RELEASE_QUEUED, RedisLockSupport.queueKeys(name),
+                    Arrays.asList(value, RedisLockKeys.channel(name), RedisLockNotifier.RELEASE_MESSAGE,
+                            String.valueOf(System.currentTimeMillis()),
+                            String.valueOf(properties.getHandoffWaiterTimeout()),
+                            RedisLockNotifier.HANDOFF_PREFIX)).then();
+        }
+        return redisTemplate.execute(RedisLockScripts.RELEASE, Collections.singletonList(name),
+                Arrays.asList(value, RedisLockKeys.channel(name), RedisLockNotifier.RELEASE_MESSAGE)).then();
+    }
+
+    /**
+     * 放弃等待，排队移交模式下退出等待队列
+     * 如果退出前锁已移交给自己，继续移交给下一个等待者
+     *
+     * @param name  锁名称
+     * @param value 锁的值
+     * @return 完成
+     */
+    private Mono<Void> abandon(String name, String value) {
+        if (!properties.isHandoff()) {
+            return Mono.empty();
+        }
+        return redisTemplate.execute(RedisLockScripts.DEQUEUE, RedisLockSupport.queueKeys(name),
+                        Collections.singletonList(value))
+                .next()
+                .filter(granted -> granted == 1L)
+                .flatMap(granted -> release(name, value))
+                .onErrorResume(e -> {
+                    // 等待者超时后由其他节点清理
+                    log.warn("abandon lock error, key is {}", name, e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 续期一次，Redis 异常时视为成功，下个周期重试
+     *
+     * @return 是否续期成功
+     */
+    private Mono<Boolean> renew(String name, String value) {
+        // 返回续期失败的下标，响应式执行时列表按元素逐个发出，有元素即续期失败
+        return redisTemplate.execute(RedisLockScripts.RENEW, Collections.singletonList(name),
+                        Arrays.asList(String.valueOf(properties.getLeaseTime()), value))
+                .hasElements()
+                .map(failed -> !failed)
+                .onErrorResume(e -> {
+                    log.warn("renew lock error, key is {}", name, e);
+                    return Mono.just(true);
+                });
+    }
+
+    /**
+     * 粘滞模式下通知持有锁的节点归还锁，排队移交模式不使用粘滞
+     */
+    private Mono<Void> signalInterest(String name) {
+        if (!properties.isStickyLease() || properties.isHandoff()) {
+            return Mono.empty();
+        }
+        return redisTemplate.convertAndSend(RedisLockKeys.channel(name), RedisLockNotifier.INTEREST_MESSAGE).then();
+    }
+
+    /**
+     * 锁的释放频道订阅，同一把锁的等待者共用
+     */
+    private static class ReleaseSubscription {
+
+        private final Sinks.Many<String> messages;
+
+        private final Disposable channel;
+
+        /**
+         * 引用计数，只在 compute 中修改
+         */
+        private int count;
+
+        ReleaseSubscription(Sinks.Many<String> messages, Disposable channel) {
+            this.messages = messages;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * 响应式加锁的句柄，维护续期任务
+     */
+    @Getter
+    private static class ReactiveLockHandle extends LockHandle {
+
+        private final Disposable renewal;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReactiveLockHandle(String name, String token, Disposable renewal) {
+            super(name, token);
+            this.renewal = renewal;
+        }
+    }
+}
@@ -1,34 +1,137 @@
 package com.github.cadecode.learn.distributedlock.redis;
 
 import com.github.cadecode.learn.distributedlock.common.DistributedLock;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.RequiredArgsConstructor;
+import com.github.cadecode.learn.distributedlock.common.LockHandle;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * @author Cade Li
  * @date 2022/2/15
  * @description Redis 版分布式锁
  */
+@Slf4j
 @Component
-@RequiredArgsConstructor
-public class RedisLock implements DistributedLock {
+public class RedisLock implements DistributedLock, InitializingBean, DisposableBean {
+
+    /**
+     * 未指定租期，使用看门狗续期
+     */
+    private static final long WATCHDOG_LEASE = -1;
+
+    /**
+     * 从节点确认数量不足，加锁失败时返回的剩余有效期，表示未知
+     */
+    private static final long NOT_REPLICATED = -2;
+
+    /**
+     * 已连接的从节点数量缓存时间（毫秒）
+     */
+    private static final long REPLICA_COUNT_CACHE_TIME = 10000;
 
     private final StringRedisTemplate redisTemplate;
 
+    private final RedisLockProperties properties;
+
+    private final RedisLockNotifier notifier;
+
+    private final RedisLockWatchdog watchdog;
+
+    private final BackoffStrategy backoffStrategy;
+
+    private final RedisLockBatcher batcher;
+
+    private final RedisLockAsyncExecutor asyncExecutor;
+
+    private final RedisLockTracker tracker;
+
+    private final RedisLockMetrics metrics;
+
+    private volatile int replicaCount;
+
+    private volatile long replicaCountTime;
+
+    /**
+     * 是否使用排队移交模式
+     */
+    private final boolean handoff;
+
+    /**
+     * 是否使用粘滞租约模式
+     */
+    private final boolean sticky;
+
     private final Map<String, LockContent> contentMap = new ConcurrentHashMap<>();
 
-    // 定时续期任务线程池，合理设置大小
-    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(10);
+    // 续期失败回调，固定为同一实例，看门狗按回调合并失败记录
+    private final Consumer<List<RedisLockWatchdog.Renewal>> renewFailureHandler = this::onRenewFail;
+
+    // 异步句柄不在 contentMap 中，续期失败只由看门狗记录日志
+    private final Consumer<List<RedisLockWatchdog.Renewal>> asyncRenewFailureHandler = renewals -> {
+    };
+
+    // 延迟任务线程池，用于延迟通知其他节点、粘滞租约空闲超时和异步加锁重试，首次使用时才创建线程
+    private final ScheduledExecutorService delayExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "redis-lock-delay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public RedisLock(StringRedisTemplate redisTemplate, RedisLockProperties properties, RedisLockNotifier notifier,
+                     RedisLockWatchdog watchdog, BackoffStrategy backoffStrategy, RedisLockBatcher batcher,
+                     RedisLockAsyncExecutor asyncExecutor, RedisLockTracker tracker, RedisLockMetrics metrics) {
+        this(redisTemplate, properties, notifier, watchdog, backoffStrategy, batcher, asyncExecutor, tracker, metrics,
+                properties.isHandoff());
+    }
+
+    RedisLock(StringRedisTemplate redisTemplate, RedisLockProperties properties, RedisLockNotifier notifier,
+              RedisLockWatchdog watchdog, BackoffStrategy backoffStrategy, RedisLockBatcher batcher,
+              RedisLockAsyncExecutor asyncExecutor, RedisLockTracker tracker, RedisLockMetrics metrics,
+              boolean handoff) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.notifier = notifier;
+        this.watchdog = watchdog;
+        this.backoffStrategy = backoffStrategy;
+        this.batcher = batcher;
+        this.asyncExecutor = asyncExecutor;
+        this.tracker = tracker;
+        this.metrics = metrics;
+        this.handoff = handoff;
+        this.sticky = properties.isStickyLease() && !handoff;
+    }
 
     /**
      * 阻塞式的获取锁
@@ -36,19 +139,58 @@ public class RedisLock implements DistributedLock {
      * @param name 锁名称
      */
     public void lock(String name) {
-        lock(name, "");
+        lock(name, ownerToken());
     }
 
     public void lock(String name, String value) {
+        lock(name, value, WATCHDOG_LEASE);
+    }
+
+    /**
+     * 阻塞式的获取锁，指定租期，不续期，到期自动释放
+     *
+     * @param name      锁名称
+     * @param leaseTime 租期
+     * @param timeUnit  时间单位
+     */
+    public void lock(String name, long leaseTime, TimeUnit timeUnit) {
+        lock(name, ownerToken(), timeUnit.toMillis(leaseTime));
+    }
+
+    public void lock(String name, String value, long leaseTime, TimeUnit timeUnit) {
+        lock(name, value, timeUnit.toMillis(leaseTime));
+    }
+
+    private void lock(String name, String value, long leaseTime) {
         if (checkReentrant(name)) {
-            storeLock(name, null, true);
+            storeLock(name, null, null, true);
             return;
         }
-        while (true) {
-            if (tryLock0(name, value)) {
-                return;
+        if (Objects.isNull(tryLock0(name, value, leaseTime, false))) {
+            return;
+        }
+        // 订阅释放消息，收到消息立即重试
+        RedisLockNotifier.Waiter waiter = notifier.subscribe(name, value);
+        BackoffStrategy.Backoff backoff = backoffStrategy.newBackoff();
+        boolean acquired = false;
+        try {
+            boolean notified = false;
+            while (true) {
+                Long ttl = tryLock0(name, value, leaseTime, true);
+                if (Objects.isNull(ttl)) {
+                    acquired = true;
+                    return;
+                }
+                if (!notified) {
+                    signalInterest(name);
+                }
+                notified = waiter.await(lockWaitTime(name, backoff, ttl, Long.MAX_VALUE));
+            }
+        } finally {
+            notifier.unsubscribe(waiter);
+            if (!acquired) {
+                abandon(name, value);
             }
-            sleep();
         }
     }
 
@@ -59,15 +201,15 @@ public class RedisLock implements DistributedLock {
      * @return 是否获取到
      */
     public boolean tryLock(String name) {
-        return tryLock(name, "");
+        return tryLock(name, ownerToken());
     }
 
     public boolean tryLock(String name, String value) {
         if (checkReentrant(name)) {
-            storeLock(name, null, true);
+            storeLock(name, null, null, true);
             return true;
         }
-        return tryLock0(name, value);
+        return Objects.isNull(tryLock0(name, value, WATCHDOG_LEASE, false));
     }
 
     /**
@@ -79,21 +221,71 @@ public class RedisLock implements DistributedLock {
      * @return 是否获取到
      */
     public boolean tryLock(String name, long timeout, TimeUnit timeUnit) {
-        return tryLock(name, "", timeout, timeUnit);
+        return tryLock(name, ownerToken(), timeout, timeUnit);
     }
 
     public boolean tryLock(String name, String value, long timeout, TimeUnit timeUnit) {
+        return tryLock(name, value, timeUnit.toMillis(timeout), WATCHDOG_LEASE);
+    }
+
+    /**
+     * 尝试在一段时间内阻塞获取锁，指定租期，不续期，到期自动释放
+     *
+     * @param name      锁名称
+     * @param waitTime  超时时间
+     * @param leaseTime 租期
+     * @param timeUnit  时间单位
+     * @return 是否获取到
+     */
+    public boolean tryLock(String name, long waitTime, long leaseTime, TimeUnit timeUnit) {
+        return tryLock(name, ownerToken(), timeUnit.toMillis(waitTime), timeUnit.toMillis(leaseTime));
+    }
+
+    public boolean tryLock(String name, String value, long waitTime, long leaseTime, TimeUnit timeUnit) {
+        return tryLock(name, value, timeUnit.toMillis(waitTime), timeUnit.toMillis(leaseTime));
+    }
+
+    private boolean tryLock(String name, String value, long totalTime, long leaseTime) {
         if (checkReentrant(name)) {
-            storeLock(name, null, true);
+            storeLock(name, null, null, true);
             return true;
         }
-        long totalTime = timeUnit.toMillis(timeout);
         long current = System.currentTimeMillis();
-        while (System.currentTimeMillis() - current <= totalTime) {
-            if (tryLock0(name, value)) {
-                return true;
+        Long ttl = tryLock0(name, value, leaseTime, false);
+        if (Objects.isNull(ttl)) {
+            return true;
+        }
+        if (RedisLockSupport.leaseExceeds(properties, ttl, totalTime)) {
+            signalInterest(name);
+            return false;
+        }
+        // 订阅释放消息，收到消息立即重试
+        RedisLockNotifier.Waiter waiter = notifier.subscribe(name, value);
+        BackoffStrategy.Backoff backoff = backoffStrategy.newBackoff();
+        boolean acquired = false;
+        try {
+            boolean notified = false;
+            long remain;
+            while ((remain = totalTime - (System.currentTimeMillis() - current)) >= 0) {
+                ttl = tryLock0(name, value, leaseTime, true);
+                if (Objects.isNull(ttl)) {
+                    acquired = true;
+                    return true;
+                }
+                if (!notified) {
+                    signalInterest(name);
+                    // 没有收到释放消息，锁在超时前不可能过期
+                    if (RedisLockSupport.leaseExceeds(properties, ttl, remain)) {
+                        return false;
+                    }
+                }
+                notified = waiter.await(lockWaitTime(name, backoff, ttl, remain));
+            }
+        } finally {
+            notifier.unsubscribe(waiter);
+            if (!acquired) {
+                abandon(name, value);
             }
-            sleep();
         }
         return false;
     }
@@ -116,23 +308,261 @@ public class RedisLock implements DistributedLock {
         }
         // 释放锁
         if (count == 0) {
+            // 粘滞模式下保留 Redis 中的锁，指定租期的锁不保留
+            if (sticky && lockContent.getExpireAt() == 0 && cache(name, lockContent)) {
+                return;
+            }
             // 清除重入记录
             contentMap.remove(name);
-            // 停止续期任务
-            lockContent.getFuture().cancel(true);
-            // 删除 Redis key
-            redisTemplate.delete(name);
+            releaseContent(name, lockContent);
+        }
+    }
+
+    /**
+     * 阻塞式的同时获取多把锁，全部获取或全部不获取
+     *
+     * @param names 锁名称
+     */
+    public void lockAll(Collection<String> names) {
+        tryLockAll(names, ownerToken(), Long.MAX_VALUE);
+    }
+
+    /**
+     * 尝试一次同时获取多把锁，全部获取或全部不获取
+     *
+     * @param names 锁名称
+     * @return 是否获取到
+     */
+    public boolean tryLockAll(Collection<String> names) {
+        return tryLockAll(names, ownerToken(), 0);
+    }
+
+    /**
+     * 尝试在一段时间内同时获取多把锁，全部获取或全部不获取
+     * 锁名称按字典序排序后加锁，多把锁共用一条续期记录
+     *
+     * @param names    锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 是否获取到
+     */
+    public boolean tryLockAll(Collection<String> names, long timeout, TimeUnit timeUnit) {
+        return tryLockAll(names, ownerToken(), timeUnit.toMillis(timeout));
+    }
+
+    /**
+     * 逐个尝试一次获取多把锁，能拿到几把拿几把，所有加锁请求在一次流水线中发送
+     * 拿到的锁批量注册续期，每把锁单独续期、单独释放
+     *
+     * @param names 锁名称
+     * @return 获取到的锁在 names 中的下标
+     */
+    public BitSet tryLockEach(List<String> names) {
+        String value = ownerToken();
+        BitSet acquired = new BitSet(names.size());
+        // 重复的锁名称以第一次出现的结果为准
+        Map<String, Integer> firstIndex = new HashMap<>();
+        List<Integer> pendingIndexes = new ArrayList<>();
+        List<List<String>> keys = new ArrayList<>();
+        List<String[]> args = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (Objects.nonNull(firstIndex.putIfAbsent(name, i))) {
+                continue;
+            }
+            if (checkReentrant(name)) {
+                storeLock(name, null, null, true);
+                acquired.set(i);
+                continue;
+            }
+            if (sticky && claimCached(name, value)) {
+                acquired.set(i);
+                continue;
+            }
+            pendingIndexes.add(i);
+            keys.add(acquireKeys(name));
+            args.add(RedisLockSupport.acquireArgs(properties, handoff, name, value, properties.getLeaseTime(),
+                    false));
+        }
+        List<Long> ttls = executeEach(keys, args);
+        List<String> won = new ArrayList<>();
+        for (int i = 0; i < ttls.size(); i++) {
+            if (Objects.isNull(ttls.get(i))) {
+                acquired.set(pendingIndexes.get(i));
+                won.add(names.get(pendingIndexes.get(i)));
+            }
+        }
+        // 设置成功 批量注册续期
+        List<RedisLockWatchdog.Renewal> renewals = watchdog.registerEach(won, value, renewFailureHandler);
+        for (int i = 0; i < won.size(); i++) {
+            String name = won.get(i);
+            storeLock(name, value, renewals.get(i), false);
+            if (sticky) {
+                notifier.listenInterest(name, () -> onInterest(name));
+            }
+        }
+        for (int i = 0; i < names.size(); i++) {
+            if (acquired.get(firstIndex.get(names.get(i)))) {
+                acquired.set(i);
+            }
+        }
+        return acquired;
+    }
+
+    /**
+     * 在一段时间内从候选锁中获取任意一把，按候选顺序优先，当前线程已持有的候选锁不参与
+     * 所有候选锁在一次脚本调用中检查，都被占用时订阅所有候选锁的释放消息，任意一把释放都会重试
+     *
+     * @param candidates 候选锁名称
+     * @param timeout    超时时间
+     * @param timeUnit   时间单位
+     * @return 获取到的锁名称，超时返回 null
+     */
+    public String acquireAny(List<String> candidates, long timeout, TimeUnit timeUnit) {
+        String value = ownerToken();
+        Collection<String> distinct = new LinkedHashSet<>(candidates);
+        List<String> names = new ArrayList<>(distinct.size());
+        for (String name : distinct) {
+            if (!checkReentrant(name)) {
+                names.add(name);
+            }
         }
+        if (names.isEmpty()) {
+            return null;
+        }
+        long totalTime = timeUnit.toMillis(timeout);
+        long current = System.currentTimeMillis();
+        long[] ttl = {-1};
+        String acquired = acquireAny0(names, value, ttl);
+        if (Objects.nonNull(acquired)) {
+            return acquired;
+        }
+        if (totalTime <= 0 || RedisLockSupport.leaseExceeds(properties, ttl[0], totalTime)) {
+            names.forEach(this::signalInterest);
+            return null;
+        }
+        RedisLockNotifier.Waiter waiter = notifier.subscribeAll(names, value);
+        BackoffStrategy.Backoff backoff = backoffStrategy.newBackoff();
+        try {
+            boolean notified = false;
+            long remain;
+            while ((remain = totalTime - (System.currentTimeMillis() - current)) >= 0) {
+                acquired = acquireAny0(names, value, ttl);
+                if (Objects.nonNull(acquired)) {
+                    return acquired;
+                }
+                if (!notified) {
+                    names.forEach(this::signalInterest);
+                    if (RedisLockSupport.leaseExceeds(properties, ttl[0], remain)) {
+                        return null;
+                    }
+                }
+                notified = waiter.await(RedisLockSupport.waitTime(backoff, ttl[0], remain));
+            }
+        } finally {
+            notifier.unsubscribe(waiter);
+        }
+        return null;
+    }
+
+    /**
+     * 同时释放多把锁，重入次数归零的锁在一次调用中释放
+     * 排队移交模式下逐个移交给各自的队首等待者
+     *
+     * @param names 锁名称
+     */
+    public void unlockAll(Collection<String> names) {
+        // 按锁的值分组，同一个值的锁一次释放
+        Map<String, List<String>> releaseMap = new LinkedHashMap<>();
+        for (String name : sortNames(names)) {
+            if (!checkReentrant(name)) {
+                continue;
+            }
+            LockContent lockContent = contentMap.get(name);
+            Integer count = lockContent.getCount();
+            if (count > 0) {
+                // 重入次数减一
+                lockContent.setCount(--count);
+            }
+            if (count > 0) {
+                continue;
+            }
+            // 清除重入记录，停止续期，批量释放不保留粘滞的锁
+            contentMap.remove(name);
+            watchdog.cancel(lockContent.getRenewal(), name);
+            if (sticky) {
+                notifier.unlistenInterest(name);
+            }
+            releaseMap.computeIfAbsent(lockContent.getValue(), k -> new ArrayList<>()).add(name);
+        }
+        releaseMap.forEach(this::releaseAll);
+    }
+
+    /**
+     * 异步获取锁，由返回的句柄持有锁，不占用调用线程
+     *
+     * @param name 锁名称
+     * @return 锁句柄
+     */
+    @Override
+    public CompletableFuture<LockHandle> lockAsync(String name) {
+        return new AsyncAcquire(name, Long.MAX_VALUE).start();
+    }
+
+    /**
+     * 异步在一段时间内获取锁，等待期间订阅释放消息，收到消息立即重试
+     *
+     * @param name     锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 锁句柄，超时返回 null
+     */
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String name, long timeout, TimeUnit timeUnit) {
+        return new AsyncAcquire(name, timeUnit.toMillis(timeout)).start();
+    }
+
+    /**
+     * 异步释放锁，可以在任意线程调用，重复释放直接返回
+     *
+     * @param handle 加锁返回的锁句柄
+     * @return 释放完成
+     */
+    @Override
+    public CompletableFuture<Void> unlockAsync(LockHandle handle) {
+        if (!(handle instanceof RedisLockHandle)) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("lock handle is not created by RedisLock"));
+            return future;
+        }
+        RedisLockHandle lockHandle = (RedisLockHandle) handle;
+        if (!lockHandle.released.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // 停止续期
+        watchdog.cancel(lockHandle.getRenewal());
+        String name = lockHandle.getName();
+        CompletableFuture<Long> released;
+        if (handoff) {
+            released = asyncExecutor.execute(RedisLockScripts.RELEASE_QUEUED, RedisLockSupport.queueKeys(name),
+                    lockHandle.getToken(), RedisLockKeys.channel(name), RedisLockNotifier.RELEASE_MESSAGE,
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(properties.getHandoffWaiterTimeout()),
+                    RedisLockNotifier.HANDOFF_PREFIX);
+        } else {
+            released = asyncExecutor.execute(RedisLockScripts.RELEASE, Collections.singletonList(name),
+                    lockHandle.getToken(), RedisLockKeys.channel(name), RedisLockNotifier.RELEASE_MESSAGE);
+        }
+        return released.thenAccept(result -> notifier.wakeLocal(name));
     }
 
     /**
      * 清除锁，不检查是不是本线程持有锁，强行删除缓存，应该在确认锁在当前节点持有的时候使用
      * 两种情况，假设当前持有锁的线程为 A 节点线程 A1，其他线程有 A 节点线程 A2，B 节点线程 B1：
-     * 1. A 节点的线程清除了 A1 的锁，续期任务正常关闭
+     * 1. A 节点的线程清除了 A1 的锁，续期正常取消
      * 2. B1 清除了其他节点持有的锁
-     * 2.1 没有继续抢锁，A1 的续期任务会抛出异常后停止，并清理 contentMap
-     * 2.2 B1 抢到锁，如果间隔时间没有达到续期任务周期，A1 的续期任务可能会无限执行下去
-     * 2.3 A2 抢到锁，storeLock 时会关闭原续期任务
+     * 2.1 没有继续抢锁，A1 的续期会失败，看门狗回调清理 contentMap
+     * 2.2 B1 抢到锁，锁的值已不属于 A1，A1 的续期会失败，看门狗回调清理 contentMap
+     * 2.3 A2 抢到锁，storeLock 时会取消原续期
      *
      * @param name 锁名称
      */
@@ -141,11 +571,157 @@ public class RedisLock implements DistributedLock {
         if (Objects.nonNull(lockContent)) {
             // 清除重入记录
             contentMap.remove(name);
-            // 停止续期任务
-            lockContent.getFuture().cancel(true);
+            // 停止续期
+            watchdog.cancel(lockContent.getRenewal(), name);
+            if (sticky) {
+                notifier.unlistenInterest(name);
+            }
         }
-        // 删除 Redis key
-        redisTemplate.delete(name);
+        // 删除 Redis key，通知等待线程
+        redisTemplate.execute(RedisLockScripts.CLEAR, Collections.singletonList(name),
+                RedisLockKeys.channel(name), RedisLockNotifier.RELEASE_MESSAGE);
+    }
+
+    /**
+     * 节点重启后接管当前线程在重启前持有的锁，需要配置固定的节点标识
+     * 一次校验持有者的续期确认锁仍属于当前线程，之后注册续期，按正常持有的锁释放
+     * 普通加锁不会接管持有者标识相同的锁，只有显式调用本方法才会接管
+     *
+     * @param name 锁名称
+     * @return 是否持有，本地已持有时直接返回 true，不增加重入次数
+     */
+    public boolean recover(String name) {
+        if (checkReentrant(name)) {
+            return true;
+        }
+        String value = ownerToken();
+        List<?> failed = redisTemplate.execute(RedisLockScripts.RENEW, Collections.singletonList(name),
+                String.valueOf(properties.getLeaseTime()), value);
+        if (Objects.isNull(failed) || !failed.isEmpty()) {
+            return false;
+        }
+        RedisLockWatchdog.Renewal renewal = watchdog.register(name, value, renewFailureHandler);
+        storeLock(name, value, renewal, false);
+        if (sticky) {
+            notifier.listenInterest(name, () -> onInterest(name));
+        }
+        return true;
+    }
+
+    /**
+     * 判断锁是否被当前线程持有，以 Redis 中的持有者标识为准
+     *
+     * @param name 锁名称
+     * @return 是否持有
+     */
+    public boolean isHeldByCurrentThread(String name) {
+        return Objects.equals(redisTemplate.opsForValue().get(name), ownerToken());
+    }
+
+    /**
+     * 当前线程的持有者标识，由节点标识和线程 id 组成
+     *
+     * @return 持有者标识
+     */
+    public String ownerToken() {
+        return RedisLockSupport.ownerToken(properties);
+    }
+
+    /**
+     * 启动时预加载脚本，之后只发送 SHA 执行
+     */
+    @Override
+    public void afterPropertiesSet() {
+        RedisLockScripts.preload(redisTemplate);
+    }
+
+    @Override
+    public void destroy() {
+        delayExecutor.shutdownNow();
+    }
+
+    /**
+     * 同时获取多把锁，当前线程已持有的锁按重入处理
+     *
+     * @param names     锁名称
+     * @param value     锁的值
+     * @param totalTime 超时时间（毫秒），Long.MAX_VALUE 表示一直等待
+     * @return 是否获取到
+     */
+    private boolean tryLockAll(Collection<String> names, String value, long totalTime) {
+        List<String> pending = new ArrayList<>(names.size());
+        List<String> reentrant = new ArrayList<>(names.size());
+        for (String name : sortNames(names)) {
+            if (checkReentrant(name)) {
+                reentrant.add(name);
+            } else {
+                pending.add(name);
+            }
+        }
+        if (pending.isEmpty() || acquireAll(pending, value, totalTime)) {
+            // 已持有的锁只增加重入次数
+            reentrant.forEach(name -> storeLock(name, null, null, true));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 获取尚未持有的多把锁，失败时订阅所有锁的释放消息，任意一把释放都会重试
+     *
+     * @param names     锁名称，已排序
+     * @param value     锁的值
+     * @param totalTime 超时时间（毫秒），Long.MAX_VALUE 表示一直等待
+     * @return 是否获取到
+     */
+    private boolean acquireAll(List<String> names, String value, long totalTime) {
+        long current = System.currentTimeMillis();
+        Long ttl = tryLockAll0(names, value);
+        if (Objects.isNull(ttl)) {
+            return true;
+        }
+        boolean blocking = totalTime == Long.MAX_VALUE;
+        if (!blocking && (totalTime <= 0 || RedisLockSupport.leaseExceeds(properties, ttl, totalTime))) {
+            names.forEach(this::signalInterest);
+            return false;
+        }
+        RedisLockNotifier.Waiter waiter = notifier.subscribeAll(names, value);
+        BackoffStrategy.Backoff backoff = backoffStrategy.newBackoff();
+        try {
+            boolean notified = false;
+            while (true) {
+                long remain = blocking ? Long.MAX_VALUE : totalTime - (System.currentTimeMillis() - current);
+                if (remain < 0) {
+                    return false;
+                }
+                ttl = tryLockAll0(names, value);
+                if (Objects.isNull(ttl)) {
+                    return true;
+                }
+                if (!notified) {
+                    names.forEach(this::signalInterest);
+                    if (!blocking && RedisLockSupport.leaseExceeds(properties, ttl, remain)) {
+                        return false;
+                    }
+                }
+                notified = waiter.await(RedisLockSupport.waitTime(backoff, ttl, remain));
+            }
+        } finally {
+            notifier.unsubscribe(waiter);
+        }
+    }
+
+    /**
+     * 锁名称去重并排序，保证各节点加锁顺序一致
+     *
+     * @param names 锁名称
+     * @return 排序后的锁名称
+     */
+    private List<String> sortNames(Collection<String> names) {
+        if (Objects.isNull(names) || names.contains(null)) {
+            throw new RuntimeException("lock name cannot be null");
+        }
+        return new ArrayList<>(new TreeSet<>(names));
     }
 
     /**
@@ -155,12 +731,16 @@ public class RedisLock implements DistributedLock {
      * @return 是否重入
      */
     private boolean checkReentrant(String name) {
-        if (Objects.isNull(name)) {
-            throw new RuntimeException("lock name cannot be null");
+        if (!RedisLockSupport.checkReentrant(contentMap, name)) {
+            return false;
         }
-        // 判断是否重入
-        return Objects.nonNull(contentMap.get(name))
-                && contentMap.get(name).getCurrThread() == Thread.currentThread();
+        LockContent lockContent = contentMap.get(name);
+        // 指定租期的锁已到期，清除重入记录
+        if (lockContent.getExpireAt() > 0 && System.currentTimeMillis() >= lockContent.getExpireAt()) {
+            contentMap.remove(name, lockContent);
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -168,7 +748,7 @@ public class RedisLock implements DistributedLock {
      *
      * @param name 锁名称
      */
-    private void storeLock(String name, ScheduledFuture<?> future, boolean reentrant) {
+    private void storeLock(String name, String value, RedisLockWatchdog.Renewal renewal, boolean reentrant) {
         LockContent lockContent = contentMap.get(name);
         if (reentrant) {
             // 重入次数加一
@@ -177,81 +757,794 @@ public class RedisLock implements DistributedLock {
         }
         // 防止有旧锁数据残留
         if (Objects.nonNull(lockContent)) {
-            // 停止续期任务
-            lockContent.getFuture().cancel(true);
+            // 停止续期
+            watchdog.cancel(lockContent.getRenewal(), name);
         }
         // 创建新的 LockContent
-        lockContent = new LockContent(future, 1, Thread.currentThread());
+        lockContent = new LockContent(renewal, value, 1, Thread.currentThread());
         contentMap.put(name, lockContent);
     }
 
     /**
-     * 尝试设置 redis key
+     * 粘滞模式下保留 Redis 中的锁，只在本地标记为空闲，并唤醒本地等待线程
      *
-     * @param name 锁名称
-     * @return 是否设置成功
+     * @param name        锁名称
+     * @param lockContent 锁内容
+     * @return 是否保留，已被其他节点请求时返回 false
      */
-    private boolean tryLock0(String name, String value) {
-        Boolean success = redisTemplate.opsForValue().setIfAbsent(name, value, 30, TimeUnit.SECONDS);
-        if (Objects.equals(success, false)) {
+    private boolean cache(String name, LockContent lockContent) {
+        long idleSince = System.currentTimeMillis();
+        boolean[] cached = {false};
+        contentMap.computeIfPresent(name, (k, v) -> {
+            if (v == lockContent && !v.isRevoked()) {
+                v.setCurrThread(null);
+                v.setIdleSince(idleSince);
+                cached[0] = true;
+            }
+            return v;
+        });
+        if (!cached[0]) {
+            return false;
+        }
+        notifier.wakeLocal(name);
+        delayExecutor.schedule(() -> expireCached(name, lockContent, idleSince),
+                properties.getStickyIdleTimeout(), TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * 获取本节点保留的空闲锁，持有者标识相同时不访问 Redis
+     * 持有者标识不同（其他线程保留的锁）时，先把 Redis 中的持有者标识改为当前线程的再持有，
+     * 否则原线程再次加锁时本地记录已属于当前线程，Redis 中的值却仍是原线程的，两边无法互相校验
+     *
+     * @param name  锁名称
+     * @param value 当前线程的锁的值
+     * @return 是否获取到
+     */
+    private boolean claimCached(String name, String value) {
+        Thread current = Thread.currentThread();
+        LockContent lockContent = contentMap.computeIfPresent(name, (k, v) -> {
+            if (Objects.isNull(v.getCurrThread()) && !v.isRevoked()) {
+                v.setCurrThread(current);
+                v.setCount(1);
+            }
+            return v;
+        });
+        if (Objects.isNull(lockContent) || lockContent.getCurrThread() != current) {
+            return false;
+        }
+        if (Objects.equals(lockContent.getValue(), value)) {
+            return true;
+        }
+        // 先停止原持有者标识的续期，已取消的续期失败时不会回调
+        watchdog.cancel(lockContent.getRenewal(), name);
+        boolean claimed = false;
+        try {
+            claimed = Objects.equals(redisTemplate.execute(RedisLockScripts.CLAIM, Collections.singletonList(name),
+                    lockContent.getValue(), value), 1L);
+        } finally {
+            if (!claimed && contentMap.remove(name, lockContent)) {
+                // 锁已过期或被清除，放弃本地记录，按正常流程加锁
+                notifier.unlistenInterest(name);
+            }
+        }
+        if (!claimed) {
             return false;
         }
-        // 设置成功 开启续期任务
-        ScheduledFuture<?> future = renewLock(name, value);
-        storeLock(name, future, false);
+        RedisLockWatchdog.Renewal renewal = watchdog.register(name, value, renewFailureHandler);
+        contentMap.computeIfPresent(name, (k, v) -> {
+            if (v == lockContent) {
+                v.setValue(value);
+                v.setRenewal(renewal);
+            }
+            return v;
+        });
         return true;
     }
 
     /**
-     * 开启锁续期任务
+     * 其他节点请求锁，空闲时立即释放，被本地线程持有时标记为在释放时归还
      *
      * @param name 锁名称
-     * @return ScheduledFuture
      */
-    private ScheduledFuture<?> renewLock(String name, String value) {
-        // 有效期设置为 30s，每 15 秒重置
-        return executor.scheduleAtFixedRate(() -> {
-            Boolean success = redisTemplate.opsForValue().setIfPresent(name, value, 30, TimeUnit.SECONDS);
-            if (Objects.equals(success, true)) {
-                return;
+    private void onInterest(String name) {
+        LockContent[] freed = {null};
+        contentMap.computeIfPresent(name, (k, v) -> {
+            if (Objects.isNull(v.getCurrThread())) {
+                freed[0] = v;
+                return null;
             }
-            // 删除锁
-            contentMap.remove(name);
-            // 抛出异常停止任务
-            throw new RuntimeException("renew lock fail, key is " + name);
-        }, 15, 15, TimeUnit.SECONDS);
+            v.setRevoked(true);
+            return v;
+        });
+        if (Objects.nonNull(freed[0])) {
+            releaseContent(name, freed[0]);
+        }
+    }
+
+    /**
+     * 空闲超时，锁仍未被本地再次获取时释放
+     *
+     * @param name        锁名称
+     * @param lockContent 锁内容
+     * @param idleSince   开始空闲的时间
+     */
+    private void expireCached(String name, LockContent lockContent, long idleSince) {
+        boolean[] expired = {false};
+        contentMap.computeIfPresent(name, (k, v) -> {
+            if (v == lockContent && Objects.isNull(v.getCurrThread()) && v.getIdleSince() == idleSince) {
+                expired[0] = true;
+                return null;
+            }
+            return v;
+        });
+        if (expired[0]) {
+            releaseContent(name, lockContent);
+        }
+    }
+
+    /**
+     * 停止续期并释放 Redis 中的锁，调用前需已从 contentMap 移除
+     *
+     * @param name        锁名称
+     * @param lockContent 锁内容
+     */
+    private void releaseContent(String name, LockContent lockContent) {
+        // 停止续期
+        watchdog.cancel(lockContent.getRenewal(), name);
+        if (sticky) {
+            notifier.unlistenInterest(name);
+        }
+        // 校验持有者后删除 Redis key，通知等待线程
+        release(name, lockContent.getValue());
+    }
+
+    /**
+     * 粘滞模式下通知持有锁的节点归还锁，锁由本节点持有时不通知
+     *
+     * @param name 锁名称
+     */
+    private void signalInterest(String name) {
+        if (!sticky || contentMap.containsKey(name)) {
+            return;
+        }
+        redisTemplate.convertAndSend(RedisLockKeys.channel(name), RedisLockNotifier.INTEREST_MESSAGE);
+    }
+
+    /**
+     * 尝试设置 redis key，失败时在同一次调用中返回锁的剩余有效期
+     *
+     * @param name      锁名称
+     * @param value     锁的值
+     * @param leaseTime 租期（毫秒），小于等于 0 时使用看门狗续期
+     * @param wait      失败后是否继续等待，排队移交模式下会加入等待队列
+     * @return 设置成功返回 null，失败返回剩余有效期（毫秒）
+     */
+    private Long tryLock0(String name, String value, long leaseTime, boolean wait) {
+        boolean leased = leaseTime > 0;
+        if (sticky) {
+            // 指定租期时不复用保留的锁，先归还再加锁
+            if (leased) {
+                onInterest(name);
+            } else if (claimCached(name, value)) {
+                return null;
+            }
+        }
+        long current = System.currentTimeMillis();
+        long lease = leased ? leaseTime : properties.getLeaseTime();
+        Long ttl = acquire(name, value, RedisLockSupport.acquireArgs(properties, handoff, name, value, lease, wait));
+        if (Objects.nonNull(ttl)) {
+            return ttl;
+        }
+        if (leased) {
+            // 指定租期 不续期，到期自动释放
+            storeLock(name, value, null, false);
+            contentMap.get(name).setExpireAt(current + leaseTime);
+            return null;
+        }
+        // 设置成功 注册续期
+        RedisLockWatchdog.Renewal renewal = watchdog.register(name, value, renewFailureHandler);
+        storeLock(name, value, renewal, false);
+        if (sticky) {
+            notifier.listenInterest(name, () -> onInterest(name));
+        }
+        return null;
+    }
+
+    /**
+     * 执行加锁脚本，按锁的持久化级别在同一流水线中等待从节点确认，确认数量不足时释放并视为失败
+     *
+     * @param name  锁名称
+     * @param value 锁的值
+     * @param args  加锁脚本的参数
+     * @return 设置成功返回 null，失败返回剩余有效期（毫秒）
+     */
+    private Long acquire(String name, String value, String[] args) {
+        RedisLockDurability durability = properties.durabilityOf(name);
+        long start = System.nanoTime();
+        int replicas = requiredReplicas(durability);
+        if (replicas < 0) {
+            // 没有可确认的从节点，不加锁，按确认不足处理，等待从节点连接后重试
+            metrics.record(name, durability, System.nanoTime() - start, false);
+            log.warn("lock not replicated, key is {}, durability {} requires a connected replica", name, durability);
+            return NOT_REPLICATED;
+        }
+        if (replicas == 0) {
+            Long ttl = batcher.execute(acquireScript(), acquireKeys(name), args);
+            metrics.record(name, durability, System.nanoTime() - start, true);
+            return ttl;
+        }
+        Long[] result = batcher.executeAndWait(acquireScript(), acquireKeys(name), args,
+                replicas, properties.getDurabilityWaitTimeout());
+        Long ttl = result[0];
+        boolean replicated = Objects.nonNull(ttl) || (Objects.nonNull(result[1]) && result[1] >= replicas);
+        metrics.record(name, durability, System.nanoTime() - start, replicated);
+        if (replicated) {
+            return ttl;
+        }
+        log.warn("lock not replicated, key is {}, acked {} of {}", name, result[1], replicas);
+        release(name, value);
+        return NOT_REPLICATED;
+    }
+
+    /**
+     * 持久化级别需要确认的从节点数量，为 0 时不发送 WAIT
+     * 多数级别按已连接的从节点数量计算，没有从节点时无需等待；ONE 级别没有从节点时无法满足，返回 -1
+     *
+     * @param durability 持久化级别
+     * @return 从节点数量，-1 表示没有可确认的从节点
+     */
+    private int requiredReplicas(RedisLockDurability durability) {
+        if (durability == RedisLockDurability.ASYNC) {
+            return 0;
+        }
+        int connected = connectedReplicas();
+        if (durability == RedisLockDurability.ONE) {
+            return connected == 0 ? -1 : 1;
+        }
+        return connected == 0 ? 0 : connected / 2 + 1;
+    }
+
+    /**
+     * 已连接的从节点数量，缓存一段时间
+     *
+     * @return 从节点数量
+     */
+    private int connectedReplicas() {
+        long now = System.currentTimeMillis();
+        if (now - replicaCountTime > REPLICA_COUNT_CACHE_TIME) {
+            try {
+                Properties info = redisTemplate.execute((RedisCallback<Properties>) connection ->
+                        connection.info("replication"));
+                replicaCount = Integer.parseInt(info.getProperty("connected_slaves", "0"));
+            } catch (Exception e) {
+                log.warn("get connected replicas fail", e);
+            }
+            replicaCountTime = now;
+        }
+        return replicaCount;
+    }
+
+    /**
+     * 加锁脚本，排队移交模式下使用排队加锁
+     *
+     * @return 脚本
+     */
+    private RedisScript<Long> acquireScript() {
+        return handoff ? RedisLockScripts.ACQUIRE_QUEUED : RedisLockScripts.ACQUIRE;
+    }
+
+    /**
+     * 加锁脚本的 key
+     *
+     * @param name 锁名称
+     * @return key 列表
+     */
+    private List<String> acquireKeys(String name) {
+        return handoff ? RedisLockSupport.queueKeys(name) : Collections.singletonList(name);
+    }
+
+    /**
+     * 一次调用设置多个 redis key，全部成功或全部失败
+     * 粘滞模式下本节点保留的空闲锁先归还，再统一加锁
+     *
+     * @param names 锁名称
+     * @param value 锁的值
+     * @return 设置成功返回 null，失败返回被占用的锁的剩余有效期（毫秒）
+     */
+    private Long tryLockAll0(List<String> names, String value) {
+        if (sticky) {
+            names.forEach(this::onInterest);
+        }
+        Collection<List<String>> groups = groupBySlot(names);
+        Long ttl = groups.size() == 1
+                ? redisTemplate.execute(RedisLockScripts.ACQUIRE_ALL, names, value,
+                String.valueOf(properties.getLeaseTime()))
+                : acquireSlots(groups, value);
+        if (Objects.nonNull(ttl)) {
+            return ttl;
+        }
+        // 设置成功 多把锁共用一条续期记录
+        RedisLockWatchdog.Renewal renewal = watchdog.registerAll(names, value, renewFailureHandler);
+        for (String name : names) {
+            storeLock(name, value, renewal, false);
+            if (sticky) {
+                notifier.listenInterest(name, () -> onInterest(name));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一次调用从候选锁中获取第一把空闲的锁，粘滞模式下优先使用本节点保留的空闲锁
+     * 开启槽位感知时按槽位分组依次调用，先检查第一个候选锁所在的槽位
+     *
+     * @param names 候选锁名称
+     * @param value 锁的值
+     * @param ttl   失败时写入候选锁中最短的剩余有效期（毫秒），-1 表示都不会过期
+     * @return 获取到的锁名称，失败返回 null
+     */
+    private String acquireAny0(List<String> names, String value, long[] ttl) {
+        if (sticky) {
+            for (String name : names) {
+                if (claimCached(name, value)) {
+                    return name;
+                }
+            }
+        }
+        String name = null;
+        long minTtl = -1;
+        for (List<String> group : groupBySlot(names)) {
+            List<?> result = redisTemplate.execute(RedisLockScripts.ACQUIRE_ANY, group,
+                    value, String.valueOf(properties.getLeaseTime()));
+            int index = Objects.isNull(result) ? 0 : ((Long) result.get(0)).intValue();
+            if (index > 0) {
+                name = group.get(index - 1);
+                break;
+            }
+            long groupTtl = Objects.isNull(result) ? -1 : (Long) result.get(1);
+            if (groupTtl >= 0 && (minTtl < 0 || groupTtl < minTtl)) {
+                minTtl = groupTtl;
+            }
+        }
+        if (Objects.isNull(name)) {
+            ttl[0] = minTtl;
+            return null;
+        }
+        // 设置成功 注册续期
+        RedisLockWatchdog.Renewal renewal = watchdog.register(name, value, renewFailureHandler);
+        storeLock(name, value, renewal, false);
+        if (sticky) {
+            String acquired = name;
+            notifier.listenInterest(acquired, () -> onInterest(acquired));
+        }
+        return name;
+    }
+
+    /**
+     * 校验持有者后一次释放多把锁，并唤醒本节点的等待线程
+     *
+     * @param value 锁的值
+     * @param names 锁名称
+     */
+    private void releaseAll(String value, List<String> names) {
+        if (handoff) {
+            names.forEach(name -> release(name, value));
+            return;
+        }
+        Collection<List<String>> groups = groupBySlot(names);
+        if (groups.size() == 1) {
+            redisTemplate.execute(RedisLockScripts.RELEASE_ALL, names, (Object[]) releaseAllArgs(value, names));
+        } else {
+            releaseSlots(groups, value);
+        }
+        names.forEach(notifier::wakeLocal);
+    }
+
+    private String[] releaseAllArgs(String value, List<String> names) {
+        String[] args = new String[names.size() + 2];
+        args[0] = value;
+        args[1] = RedisLockNotifier.RELEASE_MESSAGE;
+        for (int i = 0; i < names.size(); i++) {
+            args[i + 2] = RedisLockKeys.channel(names.get(i));
+        }
+        return args;
+    }
+
+    /**
+     * 按槽位分组，未开启槽位感知时整体作为一组
+     *
+     * @param names 锁名称
+     * @return 每个槽位的锁名称，保持原有顺序
+     */
+    private Collection<List<String>> groupBySlot(List<String> names) {
+        if (!properties.isSlotAware()) {
+            return Collections.singletonList(names);
+        }
+        Map<Integer, List<String>> groups = new LinkedHashMap<>();
+        for (String name : names) {
+            groups.computeIfAbsent(RedisLockKeys.slot(name), k -> new ArrayList<>()).add(name);
+        }
+        return groups.values();
     }
 
     /**
-     * 休眠一定时间
+     * 各槽位并行全部加锁，任意槽位失败时释放已成功的槽位，整体仍是全部成功或全部失败
+     *
+     * @param groups 每个槽位的锁名称
+     * @param value  锁的值
+     * @return 设置成功返回 null，失败返回被占用的锁中最长的剩余有效期（毫秒），-1 表示不会过期
      */
-    private void sleep() {
+    private Long acquireSlots(Collection<List<String>> groups, String value) {
+        String leaseTime = String.valueOf(properties.getLeaseTime());
+        Map<List<String>, CompletableFuture<Long>> futures = new LinkedHashMap<>();
+        for (List<String> group : groups) {
+            futures.put(group, asyncExecutor.execute(RedisLockScripts.ACQUIRE_ALL, group, value, leaseTime));
+        }
+        List<List<String>> acquired = new ArrayList<>();
+        Long ttl = null;
+        RuntimeException error = null;
+        for (Map.Entry<List<String>, CompletableFuture<Long>> entry : futures.entrySet()) {
+            Long groupTtl;
+            try {
+                groupTtl = entry.getValue().join();
+            } catch (RuntimeException e) {
+                error = e;
+                continue;
+            }
+            if (Objects.isNull(groupTtl)) {
+                acquired.add(entry.getKey());
+            } else if (Objects.isNull(ttl) || ttl != -1 && (groupTtl == -1 || groupTtl > ttl)) {
+                ttl = groupTtl;
+            }
+        }
+        if (Objects.isNull(ttl) && Objects.isNull(error)) {
+            return null;
+        }
+        // 回滚已成功的槽位
+        releaseSlots(acquired, value);
+        if (Objects.nonNull(error)) {
+            throw error;
+        }
+        return ttl;
+    }
+
+    /**
+     * 各槽位并行释放
+     *
+     * @param groups 每个槽位的锁名称
+     * @param value  锁的值
+     */
+    private void releaseSlots(Collection<List<String>> groups, String value) {
+        List<CompletableFuture<Long>> futures = new ArrayList<>(groups.size());
+        for (List<String> group : groups) {
+            futures.add(asyncExecutor.execute(RedisLockScripts.RELEASE_ALL, group, releaseAllArgs(value, group)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * 执行多次单个锁的加锁脚本，默认在一次流水线中发送
+     * 开启槽位感知时改为并行异步发送，由集群连接按 key 路由到各分片
+     *
+     * @param keys 每次调用的 key
+     * @param args 每次调用的参数
+     * @return 每次调用的脚本结果
+     */
+    private List<Long> executeEach(List<List<String>> keys, List<String[]> args) {
+        if (!properties.isSlotAware()) {
+            return batcher.executeAll(acquireScript(), keys, args);
+        }
+        List<CompletableFuture<Long>> futures = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            futures.add(asyncExecutor.execute(acquireScript(), keys.get(i), args.get(i)));
+        }
+        List<Long> results = new ArrayList<>(futures.size());
+        futures.forEach(future -> results.add(future.join()));
+        return results;
+    }
+
+    /**
+     * 校验持有者后释放锁，排队移交模式下直接移交给队首等待者
+     * 非排队模式下立即唤醒本节点的等待线程，开启本地优先窗口时延迟通知其他节点
+     *
+     * @param name  锁名称
+     * @param value 锁的值
+     */
+    private void release(String name, String value) {
+        if (handoff) {
+            redisTemplate.execute(RedisLockScripts.RELEASE_QUEUED, RedisLockSupport.queueKeys(name),
+                    value, RedisLockKeys.channel(name), RedisLockNotifier.RELEASE_MESSAGE,
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(properties.getHandoffWaiterTimeout()),
+                    RedisLockNotifier.HANDOFF_PREFIX);
+            return;
+        }
+        long window = properties.getLocalPreferenceWindow();
+        boolean preferLocal = window > 0 && notifier.hasLocalWaiters(name);
+        Long released = redisTemplate.execute(RedisLockScripts.RELEASE, Collections.singletonList(name),
+                value, preferLocal ? "" : RedisLockKeys.channel(name), RedisLockNotifier.RELEASE_MESSAGE);
+        if (!Objects.equals(released, 1L)) {
+            return;
+        }
+        notifier.wakeLocal(name);
+        if (preferLocal) {
+            delayExecutor.schedule(() -> publishIfFree(name), window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 本地优先窗口结束后通知其他节点，锁已被本节点线程拿到时不再通知
+     *
+     * @param name 锁名称
+     */
+    private void publishIfFree(String name) {
+        if (contentMap.containsKey(name)) {
+            return;
+        }
         try {
-            TimeUnit.MILLISECONDS.sleep(300);
-        } catch (InterruptedException e) {
-            // 不响应中断
+            redisTemplate.convertAndSend(RedisLockKeys.channel(name), RedisLockNotifier.RELEASE_MESSAGE);
+        } catch (Exception e) {
+            // 其他节点依靠兜底轮询重试
+        }
+    }
+
+    /**
+     * 放弃等待，排队移交模式下退出等待队列
+     * 如果退出前锁已移交给自己，继续移交给下一个等待者
+     *
+     * @param name  锁名称
+     * @param value 锁的值
+     */
+    private void abandon(String name, String value) {
+        if (!handoff) {
+            return;
+        }
+        Long granted = redisTemplate.execute(RedisLockScripts.DEQUEUE, RedisLockSupport.queueKeys(name), value);
+        if (Objects.equals(granted, 1L)) {
+            release(name, value);
+        }
+    }
+
+    /**
+     * 单个锁的等待时间，客户端跟踪模式下读取并跟踪锁，由失效推送唤醒，只以锁的剩余有效期兜底
+     *
+     * @param name    锁名称
+     * @param backoff 退避
+     * @param ttl     锁的剩余有效期，小于 0 表示未知
+     * @param remain  剩余超时时间
+     * @return 等待时间（毫秒），锁已不存在时为 0
+     */
+    private long lockWaitTime(String name, BackoffStrategy.Backoff backoff, long ttl, long remain) {
+        if (handoff || !tracker.isEnabled()) {
+            return RedisLockSupport.waitTime(backoff, ttl, remain);
+        }
+        if (!tracker.track(name)) {
+            return 0;
+        }
+        return Math.min(ttl >= 0 ? ttl : properties.getWaitPollInterval(), remain);
+    }
+
+    /**
+     * 续期失败，批量清除对应的重入记录
+     * 共用续期记录的多把锁任意一把续期失败，全部视为丢失
+     *
+     * @param renewals 续期失败的记录
+     */
+    private void onRenewFail(List<RedisLockWatchdog.Renewal> renewals) {
+        for (RedisLockWatchdog.Renewal renewal : renewals) {
+            for (String name : renewal.getNames()) {
+                // 只清除仍属于该续期记录的锁，避免误删新锁
+                boolean[] removed = {false};
+                contentMap.computeIfPresent(name, (k, v) -> {
+                    if (v.getRenewal() == renewal) {
+                        removed[0] = true;
+                        return null;
+                    }
+                    return v;
+                });
+                if (removed[0] && sticky) {
+                    notifier.unlistenInterest(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一次异步加锁过程
+     * 每次尝试只发送一条脚本命令，失败后按退避时间重试，收到释放消息时立即重试，同一时间只有一次尝试在进行
+     */
+    private class AsyncAcquire {
+
+        private final String name;
+
+        /**
+         * 每个句柄使用独立的持有者标识，不依赖线程
+         */
+        private final String value = properties.getNodeId() + ":" + UUID.randomUUID();
+
+        private final long deadline;
+
+        private final BackoffStrategy.Backoff backoff = backoffStrategy.newBackoff();
+
+        private final CompletableFuture<LockHandle> future = new CompletableFuture<>();
+
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+
+        private final AtomicReference<RedisLockNotifier.Waiter> waiter = new AtomicReference<>();
+
+        /**
+         * 尝试进行中收到了释放消息
+         */
+        private volatile boolean woken;
+
+        /**
+         * 上次等待期间收到了释放消息
+         */
+        private volatile boolean notified;
+
+        private volatile ScheduledFuture<?> retry;
+
+        AsyncAcquire(String name, long totalTime) {
+            if (Objects.isNull(name)) {
+                throw new RuntimeException("lock name cannot be null");
+            }
+            this.name = name;
+            long current = System.currentTimeMillis();
+            this.deadline = totalTime > Long.MAX_VALUE - current ? Long.MAX_VALUE : current + totalTime;
+        }
+
+        CompletableFuture<LockHandle> start() {
+            // 调用方取消时停止等待
+            future.whenComplete((handle, e) -> {
+                if (future.isCancelled()) {
+                    cleanup();
+                }
+            });
+            attempt();
+            return future;
+        }
+
+        /**
+         * 收到释放消息，在监听线程中执行，只发送命令不阻塞
+         */
+        private void wake() {
+            notified = true;
+            attempt();
+        }
+
+        private void attempt() {
+            if (future.isDone()) {
+                return;
+            }
+            if (!inFlight.compareAndSet(false, true)) {
+                woken = true;
+                return;
+            }
+            ScheduledFuture<?> scheduled = retry;
+            if (Objects.nonNull(scheduled)) {
+                scheduled.cancel(false);
+            }
+            boolean wait = Objects.nonNull(waiter.get());
+            asyncExecutor.execute(acquireScript(), acquireKeys(name),
+                            RedisLockSupport.acquireArgs(properties, handoff, name, value,
+                                    properties.getLeaseTime(), wait))
+                    .whenCompleteAsync(this::onResult, delayExecutor);
+        }
+
+        private void onResult(Long ttl, Throwable e) {
+            if (Objects.nonNull(e)) {
+                finish(null, e);
+                return;
+            }
+            if (Objects.isNull(ttl)) {
+                // 设置成功 注册续期
+                RedisLockWatchdog.Renewal renewal = watchdog.register(name, value, asyncRenewFailureHandler);
+                RedisLockHandle handle = new RedisLockHandle(name, value, renewal);
+                if (!finish(handle, null)) {
+                    // 调用方已取消，释放刚拿到的锁
+                    unlockAsync(handle);
+                }
+                return;
+            }
+            long remain = deadline - System.currentTimeMillis();
+            boolean wasNotified = notified;
+            notified = false;
+            if (!wasNotified) {
+                // 粘滞模式下请求持有者归还锁
+                if (sticky) {
+                    onInterest(name);
+                }
+                signalInterest(name);
+            }
+            boolean timed = deadline != Long.MAX_VALUE;
+            if (remain < 0 || (timed && !wasNotified && RedisLockSupport.leaseExceeds(properties, ttl, remain))) {
+                finish(null, null);
+                return;
+            }
+            if (Objects.isNull(waiter.get())) {
+                waiter.set(notifier.subscribe(name, value, this::wake));
+                // 订阅前发布的释放消息收不到，订阅后立即重试一次，与同步加锁一致
+                woken = true;
+            }
+            inFlight.set(false);
+            if (woken) {
+                woken = false;
+                attempt();
+                return;
+            }
+            retry = delayExecutor.schedule(this::attempt, RedisLockSupport.waitTime(backoff, ttl, remain),
+                    TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 结束加锁过程
+         *
+         * @param handle 锁句柄，未获取到时为 null
+         * @param e      异常
+         * @return 是否由本次调用完成
+         */
+        private boolean finish(LockHandle handle, Throwable e) {
+            cleanup();
+            boolean completed = Objects.isNull(e) ? future.complete(handle) : future.completeExceptionally(e);
+            if (Objects.isNull(handle)) {
+                abandon(name, value);
+            }
+            return completed;
+        }
+
+        private void cleanup() {
+            ScheduledFuture<?> scheduled = retry;
+            if (Objects.nonNull(scheduled)) {
+                scheduled.cancel(false);
+            }
+            RedisLockNotifier.Waiter subscribed = waiter.getAndSet(null);
+            if (Objects.nonNull(subscribed)) {
+                notifier.unsubscribe(subscribed);
+            }
+        }
+    }
+
+    /**
+     * 异步加锁的句柄，维护续期记录
+     */
+    @Getter
+    private static class RedisLockHandle extends LockHandle {
+
+        private final RedisLockWatchdog.Renewal renewal;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        RedisLockHandle(String name, String token, RedisLockWatchdog.Renewal renewal) {
+            super(name, token);
+            this.renewal = renewal;
         }
     }
 
     /**
      * 锁内容
-     * 维护续期任务和重入次数
+     * 维护续期记录和重入次数，粘滞模式下当前线程为空表示锁在本地空闲
      */
-    @Data
-    @AllArgsConstructor
-    private static class LockContent {
+    @Getter
+    @Setter
+    private static class LockContent extends RedisLockSupport.ReentrantContent<RedisLockWatchdog.Renewal> {
+
         /**
-         * 续期任务
+         * 粘滞模式下其他节点已请求该锁，释放时需要归还
          */
-        private ScheduledFuture<?> future;
+        private boolean revoked;
+
         /**
-         * 重入次数
+         * 粘滞模式下开始空闲的时间
          */
-        private Integer count;
+        private long idleSince;
 
         /**
-         * 当前线程
+         * 指定租期的锁在本地的到期时间，为 0 时由看门狗续期
          */
-        private Thread currThread;
+        private long expireAt;
+
+        LockContent(RedisLockWatchdog.Renewal renewal, String value, Integer count, Thread currThread) {
+            super(renewal, value, count, currThread);
+        }
     }
 }
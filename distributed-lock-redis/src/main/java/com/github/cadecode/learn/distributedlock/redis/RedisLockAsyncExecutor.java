@@ -0,0 +1,114 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/1
+ * @description 异步执行锁脚本，基于 Lettuce 原生异步命令，不占用调用线程
+ * 先发送 EVALSHA，脚本不存在时回退为 EVAL，非 Lettuce 连接时同步执行
+ */
+@Component
+@RequiredArgsConstructor
+public class RedisLockAsyncExecutor {
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 异步执行返回 Long 的锁脚本
+     *
+     * @param script 脚本
+     * @param keys   key
+     * @param args   参数
+     * @return 脚本结果
+     */
+    public CompletableFuture<Long> execute(RedisScript<Long> script, List<String> keys, String... args) {
+        return execute(script, ScriptOutputType.INTEGER, keys, args);
+    }
+
+    /**
+     * 异步执行返回列表的锁脚本
+     *
+     * @param script 脚本
+     * @param keys   key
+     * @param args   参数
+     * @return 脚本结果
+     */
+    @SuppressWarnings("rawtypes")
+    public CompletableFuture<List> executeList(RedisScript<List> script, List<String> keys, String... args) {
+        return execute(script, ScriptOutputType.MULTI, keys, args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> execute(RedisScript<T> script, ScriptOutputType outputType,
+                                             List<String> keys, String... args) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        RedisConnection connection;
+        try {
+            connection = redisTemplate.getRequiredConnectionFactory().getConnection();
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        Object nativeConnection = connection.getNativeConnection();
+        if (!(nativeConnection instanceof RedisClusterAsyncCommands)) {
+            connection.close();
+            try {
+                future.complete(redisTemplate.execute(script, keys, (Object[]) args));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+        RedisClusterAsyncCommands<byte[], byte[]> commands = (RedisClusterAsyncCommands<byte[], byte[]>) nativeConnection;
+        byte[][] keyBytes = toBytes(keys.toArray(new String[0]));
+        byte[][] argBytes = toBytes(args);
+        // 命令完成后才归还连接，连接池模式下不会提前复用
+        future.whenComplete((result, e) -> connection.close());
+        commands.<T>evalsha(script.getSha1(), outputType, keyBytes, argBytes)
+                .whenComplete((result, e) -> {
+                    if (Objects.isNull(e)) {
+                        future.complete(result);
+                        return;
+                    }
+                    if (!isNoScript(e)) {
+                        future.completeExceptionally(e);
+                        return;
+                    }
+                    commands.<T>eval(script.getScriptAsString(), outputType, keyBytes, argBytes)
+                            .whenComplete((evalResult, evalError) -> {
+                                if (Objects.isNull(evalError)) {
+                                    future.complete(evalResult);
+                                } else {
+                                    future.completeExceptionally(evalError);
+                                }
+                            });
+                });
+        return future;
+    }
+
+    private boolean isNoScript(Throwable e) {
+        Throwable cause = e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+        return Objects.nonNull(cause.getMessage()) && cause.getMessage().startsWith("NOSCRIPT");
+    }
+
+    private byte[][] toBytes(String[] values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,321 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/27
+ * @description 加锁请求合并
+ * 同一时间窗口内（或达到数量上限）的加锁脚本调用合并为一次流水线发送，结果分别返回给各个调用线程
+ * 未开启时直接执行，停止后入队的请求由调用线程自己执行
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisLockBatcher implements InitializingBean, DisposableBean {
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisLockProperties properties;
+
+    /**
+     * 停止标记，唤醒合并线程退出，不使用中断，避免中断正在执行的 Redis 命令
+     */
+    private static final Request STOP = new Request(null, null, null);
+
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+
+    private volatile boolean running;
+
+    private Thread flusher;
+
+    /**
+     * 执行返回 Long 的加锁脚本，开启合并时等待所在批次执行完成
+     *
+     * @param script 脚本
+     * @param keys   key
+     * @param args   参数
+     * @return 脚本结果
+     */
+    public Long execute(RedisScript<Long> script, List<String> keys, String... args) {
+        if (!running) {
+            return redisTemplate.execute(script, keys, (Object[]) args);
+        }
+        Request request = new Request(script, keys, args);
+        queue.add(request);
+        // 入队前后合并线程已停止并取完剩余请求时，没有人再处理，自己执行
+        if (!running && queue.remove(request)) {
+            executeSingle(request);
+        }
+        return await(request);
+    }
+
+    /**
+     * 等待请求完成，不响应中断，最多等待一个有效期
+     * 超时后脚本仍可能执行，锁没有续期，有效期后自动释放
+     *
+     * @param request 请求
+     * @return 脚本结果
+     */
+    private Long await(Request request) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getLeaseTime());
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return request.future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new CompletionException(e.getCause());
+                } catch (TimeoutException e) {
+                    throw new RuntimeException("batched acquire timeout, keys are " + request.keys, e);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 一次流水线执行多个加锁脚本调用，不经过合并队列
+     *
+     * @param script 脚本
+     * @param keys   每次调用的 key
+     * @param args   每次调用的参数
+     * @return 每次调用的脚本结果，顺序与参数一致
+     */
+    public List<Long> executeAll(RedisScript<Long> script, List<List<String>> keys, List<String[]> args) {
+        List<Request> batch = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            batch.add(new Request(script, keys.get(i), args.get(i)));
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+        List<Long> results = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            try {
+                results.add(request.future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 执行加锁脚本，并在同一流水线中发送 WAIT 等待从节点确认，不经过合并队列
+     * WAIT 只统计同一连接上之前的写入，脚本和 WAIT 必须在同一连接上发送，流水线使用独占连接，也不会阻塞共享连接
+     *
+     * @param script   脚本
+     * @param keys     key
+     * @param args     参数
+     * @param replicas 需要确认的从节点数量
+     * @param timeout  等待超时时间（毫秒）
+     * @return 脚本结果和确认的从节点数量
+     */
+    public Long[] executeAndWait(RedisScript<Long> script, List<String> keys, String[] args,
+                                 int replicas, long timeout) {
+        Request request = new Request(script, keys, args);
+        byte[][] waitArgs = {String.valueOf(replicas).getBytes(StandardCharsets.UTF_8),
+                String.valueOf(timeout).getBytes(StandardCharsets.UTF_8)};
+        Long[] result = pipelineAndWait(request, waitArgs, false);
+        if (Objects.nonNull(result)) {
+            return result;
+        }
+        // 流水线失败（如脚本未加载）时在同一流水线中先加载脚本再重试一次
+        result = pipelineAndWait(request, waitArgs, true);
+        if (Objects.nonNull(result)) {
+            return result;
+        }
+        // 仍然失败时不确定脚本是否执行，按加锁成功但没有从节点确认返回，由调用方释放
+        return new Long[]{null, 0L};
+    }
+
+    /**
+     * 一次流水线发送加锁脚本和 WAIT
+     *
+     * @param request  加锁请求
+     * @param waitArgs WAIT 参数
+     * @param load     是否先加载脚本
+     * @return 脚本结果和确认的从节点数量，流水线失败时返回 null
+     */
+    private Long[] pipelineAndWait(Request request, byte[][] waitArgs, boolean load) {
+        try {
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                if (load) {
+                    connection.scriptLoad(request.script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                connection.evalSha(request.script.getSha1(), ReturnType.INTEGER, request.keys.size(),
+                        request.keysAndArgs());
+                connection.execute("WAIT", waitArgs);
+                return null;
+            });
+            int offset = load ? 1 : 0;
+            return new Long[]{(Long) results.get(offset), (Long) results.get(offset + 1)};
+        } catch (Exception e) {
+            log.warn("pipelined acquire with wait fail, script loaded: {}", load, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!properties.isAcquireBatch()) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "redis-lock-batcher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        if (Objects.nonNull(flusher)) {
+            queue.add(STOP);
+        }
+    }
+
+    /**
+     * 收集请求并批量发送
+     */
+    private void flushLoop() {
+        int maxSize = properties.getAcquireBatchMaxSize();
+        long window = TimeUnit.MICROSECONDS.toNanos(properties.getAcquireBatchWindow());
+        List<Request> batch = new ArrayList<>(maxSize);
+        while (running) {
+            try {
+                Request next = queue.take();
+                long deadline = System.nanoTime() + window;
+                while (next != STOP) {
+                    batch.add(next);
+                    if (batch.size() >= maxSize) {
+                        break;
+                    }
+                    long remain = deadline - System.nanoTime();
+                    next = remain > 0 ? queue.poll(remain, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (Objects.isNull(next)) {
+                        break;
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                // 被外部中断时已收集的请求也要执行，线程即将退出，不恢复中断标记，否则后续 Redis 调用会被中断
+                batch.forEach(this::executeSingle);
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        // 停止后剩余的请求直接执行
+        Request request;
+        while (Objects.nonNull(request = queue.poll())) {
+            if (request != STOP) {
+                executeSingle(request);
+            }
+        }
+    }
+
+    /**
+     * 一次流水线发送一批请求
+     *
+     * @param batch 请求
+     */
+    private void flush(List<Request> batch) {
+        if (batch.size() == 1) {
+            executeSingle(batch.get(0));
+            return;
+        }
+        List<Object> results;
+        try {
+            results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Request request : batch) {
+                    connection.evalSha(request.script.getSha1(), ReturnType.INTEGER,
+                            request.keys.size(), request.keysAndArgs());
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // 流水线失败（如脚本未加载）时逐个执行，加锁脚本对同一持有者可重复执行
+            log.warn("pipelined acquire fail, fallback to single execution", e);
+            batch.forEach(this::executeSingle);
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete((Long) results.get(i));
+        }
+    }
+
+    private void executeSingle(Request request) {
+        try {
+            request.future.complete(redisTemplate.execute(request.script, request.keys, (Object[]) request.args));
+        } catch (Exception e) {
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 加锁请求
+     */
+    private static class Request {
+
+        private final RedisScript<Long> script;
+
+        private final List<String> keys;
+
+        private final String[] args;
+
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        Request(RedisScript<Long> script, List<String> keys, String[] args) {
+            this.script = script;
+            this.keys = keys;
+            this.args = args;
+        }
+
+        byte[][] keysAndArgs() {
+            byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+            int i = 0;
+            for (String key : keys) {
+                keysAndArgs[i++] = key.getBytes(StandardCharsets.UTF_8);
+            }
+            for (String arg : args) {
+                keysAndArgs[i++] = arg.getBytes(StandardCharsets.UTF_8);
+            }
+            return keysAndArgs;
+        }
+    }
+}
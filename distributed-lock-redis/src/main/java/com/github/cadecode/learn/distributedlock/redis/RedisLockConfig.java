@@ -0,0 +1,24 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/22
+ * @description Redis 分布式锁配置类
+ */
+@Configuration
+public class RedisLockConfig {
+
+    /**
+     * 默认退避策略，可以自定义 BackoffStrategy Bean 替换
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public BackoffStrategy redisLockBackoffStrategy(RedisLockProperties properties) {
+        return BackoffStrategy.of(properties.getBackoffType(), properties.getBackoffBase(),
+                properties.getWaitPollInterval());
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/5
+ * @description 加锁的持久化级别，加锁脚本之后在同一流水线中发送 WAIT，等待从节点确认
+ * 从节点确认数量不足时释放刚加的锁，视为加锁失败，降低主从切换导致锁丢失的风险
+ */
+public enum RedisLockDurability {
+    /**
+     * 不等待从节点确认
+     */
+    ASYNC,
+    /**
+     * 至少一个从节点确认
+     */
+    ONE,
+    /**
+     * 多数从节点确认
+     */
+    MAJORITY
+}
@@ -0,0 +1,137 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/24
+ * @description 锁相关的 Redis key 和频道命名
+ * 锁本身直接使用锁名称作为 key，辅助 key 带上锁名称的 hash tag，在 Redis Cluster 中与锁位于同一个槽位
+ * 锁名称中含有 {tag} 时按 tag 计算槽位，需要一起加锁的多把锁可以使用相同的 tag
+ * hash tag 只从锁名称中获取，不提供单独的配置：锁 key 就是锁名称，与 ReactiveRedisLock 和其他客户端共用，
+ * 另行配置 tag 会改变锁 key，新旧版本的节点无法互斥，需要同槽位的锁通过名称中的 {tag} 指定
+ */
+public final class RedisLockKeys {
+
+    private static final String PREFIX = "distributed-lock:";
+
+    /**
+     * Redis Cluster 的槽位数量
+     */
+    private static final int SLOT_COUNT = 16384;
+
+    /**
+     * 各槽位对应的最短数字 tag，按需计算
+     */
+    private static final AtomicReferenceArray<String> SLOT_TAGS = new AtomicReferenceArray<>(SLOT_COUNT);
+
+    private RedisLockKeys() {
+    }
+
+    /**
+     * 锁释放通知频道
+     *
+     * @param name 锁名称
+     * @return 频道名称
+     */
+    public static String channel(String name) {
+        return PREFIX + "channel:" + name;
+    }
+
+    /**
+     * 等待队列，按排队顺序保存等待者标识
+     *
+     * @param name 锁名称
+     * @return key
+     */
+    public static String queue(String name) {
+        return PREFIX + "queue:" + slotTagged(name);
+    }
+
+    /**
+     * 等待者超时时间，保存等待者标识和过期时间戳
+     *
+     * @param name 锁名称
+     * @return key
+     */
+    public static String timeout(String name) {
+        return PREFIX + "timeout:" + slotTagged(name);
+    }
+
+    /**
+     * 读写锁的写者等待标记，写者优先时存在标记就不再加新的读锁
+     *
+     * @param name 锁名称
+     * @return key
+     */
+    public static String writeIntent(String name) {
+        return PREFIX + "write-intent:" + slotTagged(name);
+    }
+
+    /**
+     * 锁名称的 hash tag，与 Redis Cluster 的规则一致，名称中第一对非空的 {} 内的内容，没有时为整个名称
+     *
+     * @param name 锁名称
+     * @return hash tag
+     */
+    public static String hashTag(String name) {
+        int start = name.indexOf('{');
+        if (start >= 0) {
+            int end = name.indexOf('}', start + 1);
+            if (end > start + 1) {
+                return name.substring(start + 1, end);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * 锁所在的槽位
+     *
+     * @param name 锁名称
+     * @return 槽位
+     */
+    public static int slot(String name) {
+        return ClusterSlotHashUtil.calculateSlot(name);
+    }
+
+    /**
+     * 名称本身没有 hash tag 时整体作为 hash tag，使辅助 key 与锁的槽位相同
+     * 名称中含有 } 时（如 a{}b）整体加上花括号后 Redis 会在名称内的 } 处截断 tag，改为在前面加上与锁同槽位的数字 tag
+     *
+     * @param name 锁名称
+     * @return 带 hash tag 的名称
+     */
+    static String slotTagged(String name) {
+        if (hashTag(name).length() != name.length()) {
+            return name;
+        }
+        if (name.indexOf('}') < 0) {
+            return "{" + name + "}";
+        }
+        return "{" + slotTag(slot(name)) + "}" + name;
+    }
+
+    /**
+     * 槽位对应的 tag，从 0 开始查找第一个落在该槽位的数字
+     *
+     * @param slot 槽位
+     * @return tag
+     */
+    private static String slotTag(int slot) {
+        String tag = SLOT_TAGS.get(slot);
+        if (Objects.nonNull(tag)) {
+            return tag;
+        }
+        for (int i = 0; ; i++) {
+            String candidate = String.valueOf(i);
+            if (ClusterSlotHashUtil.calculateSlot(candidate) == slot) {
+                SLOT_TAGS.set(slot, candidate);
+                return candidate;
+            }
+        }
+    }
+}
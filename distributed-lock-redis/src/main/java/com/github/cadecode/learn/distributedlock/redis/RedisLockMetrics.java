@@ -0,0 +1,152 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/5
+ * @description 加锁耗时统计，按持久化级别分别统计，用于比较各级别额外的延迟
+ * 同时按锁名称和持久化级别统计，定位确认不足或延迟较高的锁，统计项随锁名称增长，锁名称不宜无限增多
+ */
+@Component
+public class RedisLockMetrics {
+
+    private final Map<RedisLockDurability, Stats> statsMap = new EnumMap<>(RedisLockDurability.class);
+
+    /**
+     * 按锁名称和持久化级别的统计
+     */
+    private final Map<String, Map<RedisLockDurability, Stats>> nameStatsMap = new ConcurrentHashMap<>();
+
+    public RedisLockMetrics() {
+        for (RedisLockDurability durability : RedisLockDurability.values()) {
+            statsMap.put(durability, new Stats());
+        }
+    }
+
+    /**
+     * 记录一次加锁脚本调用
+     *
+     * @param name       锁名称
+     * @param durability 持久化级别
+     * @param nanos      耗时（纳秒），包含等待从节点确认的时间
+     * @param replicated 从节点确认数量是否满足
+     */
+    public void record(String name, RedisLockDurability durability, long nanos, boolean replicated) {
+        statsMap.get(durability).record(nanos, replicated);
+        nameStatsMap.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(durability, k -> new Stats())
+                .record(nanos, replicated);
+    }
+
+    /**
+     * 调用次数
+     *
+     * @param durability 持久化级别
+     * @return 次数
+     */
+    public long getCount(RedisLockDurability durability) {
+        return statsMap.get(durability).count.sum();
+    }
+
+    /**
+     * 平均耗时
+     *
+     * @param durability 持久化级别
+     * @return 平均耗时（微秒）
+     */
+    public long getAverageMicros(RedisLockDurability durability) {
+        return statsMap.get(durability).averageMicros();
+    }
+
+    /**
+     * 从节点确认数量不足的次数
+     *
+     * @param durability 持久化级别
+     * @return 次数
+     */
+    public long getUnreplicatedCount(RedisLockDurability durability) {
+        return statsMap.get(durability).unreplicated.sum();
+    }
+
+    /**
+     * 有统计记录的锁名称
+     *
+     * @return 锁名称
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(nameStatsMap.keySet());
+    }
+
+    /**
+     * 某把锁在某个持久化级别下的调用次数
+     *
+     * @param name       锁名称
+     * @param durability 持久化级别
+     * @return 次数
+     */
+    public long getCount(String name, RedisLockDurability durability) {
+        Stats stats = statsOf(name, durability);
+        return Objects.isNull(stats) ? 0 : stats.count.sum();
+    }
+
+    /**
+     * 某把锁在某个持久化级别下的平均耗时
+     *
+     * @param name       锁名称
+     * @param durability 持久化级别
+     * @return 平均耗时（微秒）
+     */
+    public long getAverageMicros(String name, RedisLockDurability durability) {
+        Stats stats = statsOf(name, durability);
+        return Objects.isNull(stats) ? 0 : stats.averageMicros();
+    }
+
+    /**
+     * 某把锁在某个持久化级别下从节点确认数量不足的次数
+     *
+     * @param name       锁名称
+     * @param durability 持久化级别
+     * @return 次数
+     */
+    public long getUnreplicatedCount(String name, RedisLockDurability durability) {
+        Stats stats = statsOf(name, durability);
+        return Objects.isNull(stats) ? 0 : stats.unreplicated.sum();
+    }
+
+    private Stats statsOf(String name, RedisLockDurability durability) {
+        Map<RedisLockDurability, Stats> map = nameStatsMap.get(name);
+        return Objects.isNull(map) ? null : map.get(durability);
+    }
+
+    private static class Stats {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAdder unreplicated = new LongAdder();
+
+        void record(long nanos, boolean replicated) {
+            count.increment();
+            totalNanos.add(nanos);
+            if (!replicated) {
+                unreplicated.increment();
+            }
+        }
+
+        long averageMicros() {
+            long n = count.sum();
+            return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.sum() / n);
+        }
+    }
+}
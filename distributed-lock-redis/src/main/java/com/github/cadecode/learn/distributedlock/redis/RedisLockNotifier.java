@@ -0,0 +1,336 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import lombok.Getter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/20
+ * @description 锁释放通知，基于 Redis 发布订阅唤醒等待锁的线程
+ * 每个 JVM 共用一个监听容器，同一把锁的等待线程共用一个订阅
+ * 等待线程通过 park/unpark 挂起和唤醒，本节点释放锁时可以直接唤醒本地等待线程，不需要经过 Redis
+ * 开启 key 事件唤醒时，额外订阅 key 过期和删除事件，持有者宕机导致锁过期时也能立即唤醒等待线程
+ */
+@Component
+public class RedisLockNotifier implements InitializingBean, DisposableBean {
+
+    /**
+     * 释放锁消息，唤醒所有等待者
+     */
+    public static final String RELEASE_MESSAGE = "release";
+
+    /**
+     * 移交锁消息前缀，后接新持有者标识，只唤醒该等待者
+     */
+    public static final String HANDOFF_PREFIX = "handoff:";
+
+    /**
+     * 请求锁消息，等待者通知持有者节点释放粘滞的锁
+     */
+    public static final String INTEREST_MESSAGE = "interest";
+
+    /**
+     * key 过期和删除事件，消息内容为 key
+     */
+    private static final List<PatternTopic> KEY_EVENT_TOPICS = Arrays.asList(
+            new PatternTopic("__keyevent@*__:expired"), new PatternTopic("__keyevent@*__:del"));
+
+    private final RedisMessageListenerContainer container;
+
+    private final RedisLockProperties properties;
+
+    private final Map<String, Subscription> subscriptionMap = new ConcurrentHashMap<>();
+
+    public RedisLockNotifier(RedisConnectionFactory connectionFactory, RedisLockProperties properties) {
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        this.properties = properties;
+    }
+
+    /**
+     * 订阅锁释放消息，同一把锁只会订阅一次，使用引用计数维护
+     *
+     * @param name  锁名称
+     * @param value 等待者的持有者标识
+     * @return 等待者
+     */
+    public Waiter subscribe(String name, String value) {
+        return subscribeAll(Collections.singletonList(name), value);
+    }
+
+    /**
+     * 同时订阅多把锁的释放消息，任意一把锁释放都会唤醒等待者
+     *
+     * @param names 锁名称
+     * @param value 等待者的持有者标识
+     * @return 等待者
+     */
+    public Waiter subscribeAll(Collection<String> names, String value) {
+        return subscribeAll(names, value, null);
+    }
+
+    /**
+     * 订阅锁释放消息，收到消息时回调，不挂起线程
+     * 回调在监听线程中执行，不能阻塞
+     *
+     * @param name     锁名称
+     * @param value    等待者的持有者标识
+     * @param listener 收到消息时的回调
+     * @return 等待者
+     */
+    public Waiter subscribe(String name, String value, Runnable listener) {
+        return subscribeAll(Collections.singletonList(name), value, listener);
+    }
+
+    private Waiter subscribeAll(Collection<String> names, String value, Runnable listener) {
+        List<Subscription> subscriptions = new ArrayList<>(names.size());
+        for (String name : names) {
+            subscriptions.add(retain(name));
+        }
+        Waiter waiter = new Waiter(subscriptions, value, listener);
+        subscriptions.forEach(subscription -> subscription.waiters.add(waiter));
+        return waiter;
+    }
+
+    /**
+     * 监听其他节点对锁的请求，每个锁名称在本节点只有一个监听者
+     *
+     * @param name     锁名称
+     * @param listener 收到请求时的回调
+     */
+    public void listenInterest(String name, Runnable listener) {
+        Subscription subscription = retain(name);
+        if (Objects.nonNull(subscription.interestListener)) {
+            // 已有监听者，替换回调，不重复计数
+            release(name);
+        }
+        subscription.interestListener = listener;
+    }
+
+    /**
+     * 取消监听其他节点对锁的请求
+     *
+     * @param name 锁名称
+     */
+    public void unlistenInterest(String name) {
+        Subscription subscription = subscriptionMap.get(name);
+        if (Objects.nonNull(subscription) && Objects.nonNull(subscription.interestListener)) {
+            subscription.interestListener = null;
+            release(name);
+        }
+    }
+
+    /**
+     * 唤醒本节点等待该锁的所有线程
+     *
+     * @param name 锁名称
+     */
+    public void wakeLocal(String name) {
+        Subscription subscription = subscriptionMap.get(name);
+        if (Objects.nonNull(subscription)) {
+            subscription.waiters.forEach(Waiter::wake);
+        }
+    }
+
+    /**
+     * 本节点是否有线程在等待该锁
+     *
+     * @param name 锁名称
+     * @return 是否有等待线程
+     */
+    public boolean hasLocalWaiters(String name) {
+        Subscription subscription = subscriptionMap.get(name);
+        return Objects.nonNull(subscription) && !subscription.waiters.isEmpty();
+    }
+
+    /**
+     * 取消订阅，没有等待线程时移除监听
+     *
+     * @param waiter 等待者
+     */
+    public void unsubscribe(Waiter waiter) {
+        for (Subscription subscription : waiter.subscriptions) {
+            subscription.waiters.remove(waiter);
+            release(subscription.getName());
+        }
+    }
+
+    /**
+     * 增加订阅引用，首次引用时添加监听
+     *
+     * @param name 锁名称
+     * @return 订阅
+     */
+    private Subscription retain(String name) {
+        return subscriptionMap.compute(name, (k, v) -> {
+            if (Objects.isNull(v)) {
+                v = new Subscription(k);
+                container.addMessageListener(v, new ChannelTopic(RedisLockKeys.channel(k)));
+            }
+            v.count++;
+            return v;
+        });
+    }
+
+    /**
+     * 减少订阅引用，没有引用时移除监听
+     *
+     * @param name 锁名称
+     */
+    private void release(String name) {
+        subscriptionMap.computeIfPresent(name, (k, v) -> {
+            if (--v.count > 0) {
+                return v;
+            }
+            container.removeMessageListener(v, new ChannelTopic(RedisLockKeys.channel(k)));
+            return null;
+        });
+    }
+
+    /**
+     * 锁 key 过期或被删除，唤醒本节点等待该锁的线程
+     *
+     * @param message 事件消息
+     * @param pattern 订阅的模式
+     */
+    private void onKeyEvent(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (key.startsWith(properties.getKeyEventPrefix())) {
+            wakeLocal(key);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.isKeyEventWakeup()) {
+            container.addMessageListener(this::onKeyEvent, KEY_EVENT_TOPICS);
+        }
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        container.destroy();
+    }
+
+    /**
+     * 锁订阅
+     * 收到释放消息时唤醒所有等待者，收到移交消息时只唤醒新持有者，收到请求消息时回调持有者
+     */
+    public static class Subscription implements MessageListener {
+        /**
+         * 锁名称
+         */
+        @Getter
+        private final String name;
+        /**
+         * 订阅次数，在 compute 中修改
+         */
+        private int count;
+
+        private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 其他节点请求锁时的回调
+         */
+        private volatile Runnable interestListener;
+
+        Subscription(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onMessage(Message message, byte[] pattern) {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (INTEREST_MESSAGE.equals(body)) {
+                Runnable listener = interestListener;
+                if (Objects.nonNull(listener)) {
+                    listener.run();
+                }
+                return;
+            }
+            if (body.startsWith(HANDOFF_PREFIX)) {
+                String owner = body.substring(HANDOFF_PREFIX.length());
+                waiters.stream().filter(waiter -> Objects.equals(waiter.value, owner)).forEach(Waiter::wake);
+                return;
+            }
+            waiters.forEach(Waiter::wake);
+        }
+    }
+
+    /**
+     * 等待者，只能由创建它的线程等待，带回调的等待者收到消息时回调
+     */
+    public static class Waiter {
+
+        private final List<Subscription> subscriptions;
+
+        private final String value;
+
+        private final Thread thread;
+
+        private final Runnable listener;
+
+        private final AtomicBoolean signalled = new AtomicBoolean();
+
+        Waiter(List<Subscription> subscriptions, String value, Runnable listener) {
+            this.subscriptions = subscriptions;
+            this.value = value;
+            this.listener = listener;
+            this.thread = Objects.isNull(listener) ? Thread.currentThread() : null;
+        }
+
+        /**
+         * 唤醒，多次唤醒只保留一次
+         */
+        void wake() {
+            if (Objects.nonNull(listener)) {
+                listener.run();
+                return;
+            }
+            signalled.set(true);
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * 等待通知或超时
+         *
+         * @param timeout 等待时间（毫秒）
+         * @return 是否收到通知
+         */
+        public boolean await(long timeout) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            long remain;
+            while (!signalled.get() && (remain = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remain);
+                // 不响应中断，清除中断标记防止 park 立即返回
+                Thread.interrupted();
+            }
+            return signalled.getAndSet(false);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/20
+ * @description Redis 分布式锁配置
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "distributed-lock.redis")
+public class RedisLockProperties {
+
+    /**
+     * 节点标识，与线程 id 组成锁的持有者标识，默认随机生成
+     * 配置为固定值时，节点重启后可以通过 RedisLock.recover 接管重启前持有的锁
+     */
+    private String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * 等待锁时的兜底轮询间隔（毫秒），也是退避等待时间的上限
+     * 正常情况下由释放锁消息唤醒，消息丢失时依靠此间隔重试
+     */
+    private long waitPollInterval = 5000;
+
+    /**
+     * 抢锁失败后的退避策略
+     */
+    private BackoffStrategy.Type backoffType = BackoffStrategy.Type.EXPONENTIAL;
+
+    /**
+     * 退避基础等待时间（毫秒）
+     */
+    private long backoffBase = 100;
+
+    /**
+     * 租期感知模式，带超时的 tryLock 发现锁的剩余有效期超过剩余超时时间，且没有收到释放消息时，立即返回失败
+     */
+    private boolean leaseAware = false;
+
+    /**
+     * 排队移交模式，等待者在 Redis 中排队，释放锁时直接移交给队首等待者并只通知该等待者
+     * 所有节点需要使用相同的模式
+     */
+    private boolean handoff = false;
+
+    /**
+     * 排队移交模式下等待者的超时时间（毫秒），等待者每次重试时刷新，超时未刷新视为放弃
+     * 也是锁移交后等待者认领锁的期限，应大于 waitPollInterval
+     */
+    private long handoffWaiterTimeout = 10000;
+
+    /**
+     * 本地优先窗口（毫秒），释放锁时如果本节点有等待线程，先唤醒本地线程，延迟该时间后再通知其他节点
+     * 为 0 时同时通知，排队移交模式下不生效
+     */
+    private long localPreferenceWindow = 0;
+
+    /**
+     * 粘滞租约模式，本地释放锁时保留 Redis 中的锁，只在本地标记为空闲，之后本节点加锁直接在内存中完成
+     * 其他节点请求该锁或空闲超时后才真正释放，排队移交模式下不生效
+     */
+    private boolean stickyLease = false;
+
+    /**
+     * 粘滞租约的空闲超时时间（毫秒）
+     */
+    private long stickyIdleTimeout = 5000;
+
+    /**
+     * 合并加锁请求，同一时间窗口内的加锁请求通过一次流水线发送
+     */
+    private boolean acquireBatch = false;
+
+    /**
+     * 合并加锁请求的时间窗口（微秒）
+     */
+    private long acquireBatchWindow = 200;
+
+    /**
+     * 单次流水线最多包含的加锁请求数量
+     */
+    private int acquireBatchMaxSize = 128;
+
+    /**
+     * 订阅 key 过期和删除事件，锁 key 消失时立即唤醒本节点的等待线程，持有者宕机后不必等到下次重试
+     * 需要 Redis 开启 notify-keyspace-events（至少包含 Egx）
+     */
+    private boolean keyEventWakeup = false;
+
+    /**
+     * 订阅 key 事件时只处理以该前缀开头的锁 key，为空时处理所有 key
+     */
+    private String keyEventPrefix = "";
+
+    /**
+     * 客户端跟踪模式，加锁失败后读取并跟踪锁，收到服务端失效推送前不再重试，需要 Redis 6 以上，排队移交模式下不生效
+     */
+    private boolean clientTracking = false;
+
+    /**
+     * Redlock 模式下单个节点的响应超时时间（毫秒），应远小于锁有效期
+     */
+    private long redlockNodeTimeout = 50;
+
+    /**
+     * 默认的加锁持久化级别
+     */
+    private RedisLockDurability defaultDurability = RedisLockDurability.ASYNC;
+
+    /**
+     * 按锁名称单独配置的加锁持久化级别
+     */
+    private Map<String, RedisLockDurability> durability = new HashMap<>();
+
+    /**
+     * WAIT 等待从节点确认的超时时间（毫秒）
+     */
+    private long durabilityWaitTimeout = 100;
+
+    /**
+     * Redis Cluster 槽位感知，多 key 的加锁、释放、续期按槽位分组，分别并行发送到各分片
+     */
+    private boolean slotAware = false;
+
+    /**
+     * 读写锁写者优先，有写者等待时不再加新的读锁，避免读者源源不断导致写者饥饿
+     */
+    private boolean writerPreference = true;
+
+    /**
+     * 读写锁写者等待标记有效期（毫秒），写者每次重试时刷新，应大于等待轮询间隔
+     */
+    private long writerIntentTimeout = 10000;
+
+    /**
+     * 锁有效期（毫秒），看门狗每隔有效期的一半续期一次
+     */
+    private long leaseTime = 30000;
+
+    /**
+     * 看门狗时间轮每格时长（毫秒），同一格内到期的锁合并续期
+     */
+    private long watchdogTick = 1000;
+
+    /**
+     * 看门狗时间轮格数，向上取整为 2 的幂
+     */
+    private int watchdogWheelSize = 64;
+
+    /**
+     * 单次 Lua 调用最多续期的锁数量
+     */
+    private int renewBatchSize = 1000;
+
+    /**
+     * 获取锁的持久化级别
+     *
+     * @param name 锁名称
+     * @return 持久化级别
+     */
+    public RedisLockDurability durabilityOf(String name) {
+        return durability.getOrDefault(name, defaultDurability);
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/20
+ * @description Redis 锁使用的 Lua 脚本
+ * 执行时先发送 EVALSHA，脚本不存在时才回退为 EVAL
+ */
+@Slf4j
+@SuppressWarnings("rawtypes")
+public final class RedisLockScripts {
+
+    /**
+     * 加锁，失败时返回锁的剩余有效期
+     */
+    public static final RedisScript<Long> ACQUIRE = load("acquire.lua", Long.class);
+
+    /**
+     * 批量续期，只续期仍属于持有者的锁，返回续期失败的 key 下标
+     */
+    public static final RedisScript<List> RENEW = load("renew.lua", List.class);
+
+    /**
+     * 释放锁，校验持有者并发布释放消息
+     */
+    public static final RedisScript<Long> RELEASE = load("release.lua", Long.class);
+
+    /**
+     * 强制清除锁并发布释放消息
+     */
+    public static final RedisScript<Long> CLEAR = load("clear.lua", Long.class);
+
+    /**
+     * 粘滞模式下认领本节点其他线程保留的锁，校验原持有者后改为新持有者，返回是否认领成功
+     */
+    public static final RedisScript<Long> CLAIM = load("claim.lua", Long.class);
+
+    /**
+     * 排队加锁，失败时加入等待队列并返回锁的剩余有效期
+     */
+    public static final RedisScript<Long> ACQUIRE_QUEUED = load("acquire_queued.lua", Long.class);
+
+    /**
+     * 释放锁，有等待者时直接移交给队首等待者
+     */
+    public static final RedisScript<Long> RELEASE_QUEUED = load("release_queued.lua", Long.class);
+
+    /**
+     * 放弃排队，返回锁是否已移交给该等待者
+     */
+    public static final RedisScript<Long> DEQUEUE = load("dequeue.lua", Long.class);
+
+    /**
+     * 批量加锁，全部加锁成功或全部不加锁，失败时返回被占用的锁的剩余有效期
+     */
+    public static final RedisScript<Long> ACQUIRE_ALL = load("acquire_all.lua", Long.class);
+
+    /**
+     * 批量释放锁，校验持有者并逐个发布释放消息，返回释放的数量
+     */
+    public static final RedisScript<Long> RELEASE_ALL = load("release_all.lua", Long.class);
+
+    /**
+     * 从候选锁中获取第一把空闲的锁，返回锁的下标，失败时返回最短的剩余有效期
+     */
+    public static final RedisScript<List> ACQUIRE_ANY = load("acquire_any.lua", List.class);
+
+    /**
+     * 加读锁，写者优先时有写者等待就失败，失败时返回锁的剩余有效期
+     */
+    public static final RedisScript<Long> RW_ACQUIRE_READ = load("rw_acquire_read.lua", Long.class);
+
+    /**
+     * 加写锁，失败时设置写者等待标记并返回锁的剩余有效期
+     */
+    public static final RedisScript<Long> RW_ACQUIRE_WRITE = load("rw_acquire_write.lua", Long.class);
+
+    /**
+     * 释放读锁，没有读者时发布释放消息
+     */
+    public static final RedisScript<Long> RW_RELEASE_READ = load("rw_release_read.lua", Long.class);
+
+    /**
+     * 释放写锁，仍有读者时降级为读锁
+     */
+    public static final RedisScript<Long> RW_RELEASE_WRITE = load("rw_release_write.lua", Long.class);
+
+    /**
+     * 批量续期读写锁，每把锁覆盖本节点的所有读者和写者，返回续期失败的下标
+     */
+    public static final RedisScript<List> RW_RENEW = load("rw_renew.lua", List.class);
+
+    private static final List<RedisScript<?>> ALL = Arrays.asList(ACQUIRE, RENEW, RELEASE, CLEAR, CLAIM,
+            ACQUIRE_QUEUED, RELEASE_QUEUED, DEQUEUE, ACQUIRE_ALL, RELEASE_ALL, ACQUIRE_ANY,
+            RW_ACQUIRE_READ, RW_ACQUIRE_WRITE, RW_RELEASE_READ, RW_RELEASE_WRITE, RW_RENEW);
+
+    private RedisLockScripts() {
+    }
+
+    /**
+     * 把所有脚本加载到 Redis 脚本缓存，加载失败时执行会自动回退为 EVAL
+     *
+     * @param redisTemplate RedisTemplate
+     */
+    public static void preload(RedisTemplate<?, ?> redisTemplate) {
+        try {
+            redisTemplate.execute((RedisCallback<Object>) connection -> {
+                for (RedisScript<?> script : ALL) {
+                    connection.scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("preload lock scripts fail", e);
+        }
+    }
+
+    private static <T> RedisScript<T> load(String file, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource("lua/" + file));
+        script.setResultType(resultType);
+        return script;
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/7
+ * @description 各种 Redis 锁共用的等待时间计算、持有者标识、线程重入判断和加锁脚本参数
+ */
+final class RedisLockSupport {
+
+    private RedisLockSupport() {
+    }
+
+    /**
+     * 租期感知模式下，判断锁的剩余有效期是否超过剩余超时时间
+     *
+     * @param properties 配置
+     * @param ttl        锁的剩余有效期，-1 表示永不过期
+     * @param remain     剩余超时时间
+     * @return 是否超过
+     */
+    static boolean leaseExceeds(RedisLockProperties properties, long ttl, long remain) {
+        return properties.isLeaseAware() && (ttl == -1 || ttl > remain);
+    }
+
+    /**
+     * 计算下次重试前的等待时间，不超过锁的剩余有效期和剩余超时时间
+     *
+     * @param backoff 退避
+     * @param ttl     锁的剩余有效期，小于 0 表示未知
+     * @param remain  剩余超时时间
+     * @return 等待时间（毫秒）
+     */
+    static long waitTime(BackoffStrategy.Backoff backoff, long ttl, long remain) {
+        long delay = Math.min(backoff.nextDelay(), remain);
+        if (ttl >= 0) {
+            delay = Math.min(delay, ttl);
+        }
+        return delay;
+    }
+
+    /**
+     * 当前线程的持有者标识，由节点标识和线程 id 组成
+     *
+     * @param properties 配置
+     * @return 持有者标识
+     */
+    static String ownerToken(RedisLockProperties properties) {
+        return properties.getNodeId() + ":" + Thread.currentThread().getId();
+    }
+
+    /**
+     * 加锁脚本的参数，排队移交模式下使用 acquire_queued.lua 的参数
+     *
+     * @param properties 配置
+     * @param handoff    是否排队移交
+     * @param name       锁名称
+     * @param value      锁的值
+     * @param leaseTime  有效期（毫秒）
+     * @param wait       失败后是否加入等待队列，只在排队移交模式下有效
+     * @return 参数
+     */
+    static String[] acquireArgs(RedisLockProperties properties, boolean handoff, String name, String value,
+                                long leaseTime, boolean wait) {
+        if (!handoff) {
+            return new String[]{value, String.valueOf(leaseTime)};
+        }
+        long now = System.currentTimeMillis();
+        String expireAt = wait ? String.valueOf(now + properties.getHandoffWaiterTimeout()) : "0";
+        return new String[]{value, String.valueOf(leaseTime), String.valueOf(now), expireAt,
+                String.valueOf(properties.getHandoffWaiterTimeout()), RedisLockKeys.channel(name),
+                RedisLockNotifier.HANDOFF_PREFIX};
+    }
+
+    /**
+     * 排队移交模式使用的 key：锁、等待队列、等待者超时时间
+     *
+     * @param name 锁名称
+     * @return key 列表
+     */
+    static List<String> queueKeys(String name) {
+        return Arrays.asList(name, RedisLockKeys.queue(name), RedisLockKeys.timeout(name));
+    }
+
+    /**
+     * 检查当前线程是否已持有锁
+     *
+     * @param contentMap 本地持有的锁
+     * @param name       锁名称
+     * @return 是否重入
+     */
+    static boolean checkReentrant(Map<String, ? extends ReentrantContent<?>> contentMap, String name) {
+        if (Objects.isNull(name)) {
+            throw new RuntimeException("lock name cannot be null");
+        }
+        ReentrantContent<?> lockContent = contentMap.get(name);
+        return Objects.nonNull(lockContent) && lockContent.getCurrThread() == Thread.currentThread();
+    }
+
+    /**
+     * 线程持有的锁内容
+     * 维护续期记录和重入次数
+     *
+     * @param <R> 续期记录类型
+     */
+    @Getter
+    @Setter
+    static class ReentrantContent<R> {
+        /**
+         * 续期记录
+         */
+        private R renewal;
+        /**
+         * 锁的值，释放时校验持有者
+         */
+        private String value;
+        /**
+         * 重入次数
+         */
+        private Integer count;
+        /**
+         * 当前线程
+         */
+        private Thread currThread;
+
+        ReentrantContent(R renewal, String value, Integer count, Thread currThread) {
+            this.renewal = renewal;
+            this.value = value;
+            this.count = count;
+            this.currThread = currThread;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.protocol.ProtocolVersion;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/3
+ * @description 基于 RESP3 客户端跟踪（CLIENT TRACKING）的锁变化通知
+ * 使用独立的 Lettuce 连接读取被占用的锁，服务端在锁被修改、续期、删除或过期时推送失效消息，收到后唤醒本节点等待该锁的线程
+ * 等待线程在收到失效消息前不再重试加锁，长时间被持有的锁几乎不产生 Redis 请求
+ * 只支持单机配置，按连接工厂的地址、认证、数据库、SSL 和超时建立连接，哨兵、集群和 Unix socket 配置下不开启跟踪
+ * 重连后重新开启跟踪并唤醒所有等待线程
+ */
+@Slf4j
+@Component
+public class RedisLockTracker implements InitializingBean, DisposableBean {
+
+    private static final String INVALIDATE = "invalidate";
+
+    private final RedisConnectionFactory connectionFactory;
+
+    private final RedisLockProperties properties;
+
+    private final RedisLockNotifier notifier;
+
+    /**
+     * 已读取并等待失效消息的锁名称
+     */
+    private final Set<String> trackedNames = ConcurrentHashMap.newKeySet();
+
+    private RedisClient client;
+
+    private volatile StatefulRedisConnection<String, String> connection;
+
+    public RedisLockTracker(RedisConnectionFactory connectionFactory, RedisLockProperties properties,
+                            RedisLockNotifier notifier) {
+        this.connectionFactory = connectionFactory;
+        this.properties = properties;
+        this.notifier = notifier;
+    }
+
+    /**
+     * 是否已开启客户端跟踪
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return Objects.nonNull(connection);
+    }
+
+    /**
+     * 读取锁并开始跟踪，之后锁发生变化时唤醒本节点的等待线程
+     *
+     * @param name 锁名称
+     * @return 锁是否仍被持有，读取失败时返回 true，由兜底等待时间重试
+     */
+    public boolean track(String name) {
+        trackedNames.add(name);
+        try {
+            return Objects.nonNull(connection.sync().get(name));
+        } catch (Exception e) {
+            log.warn("track lock fail, key is {}", name, e);
+            return true;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!properties.isClientTracking()) {
+            return;
+        }
+        if (!(connectionFactory instanceof LettuceConnectionFactory)) {
+            log.warn("client tracking requires lettuce, disabled");
+            return;
+        }
+        LettuceConnectionFactory lettuceConnectionFactory = (LettuceConnectionFactory) connectionFactory;
+        if (lettuceConnectionFactory.isRedisSentinelAware() || lettuceConnectionFactory.isClusterAware()
+                || Objects.nonNull(lettuceConnectionFactory.getSocketConfiguration())) {
+            log.warn("client tracking only supports standalone redis, disabled");
+            return;
+        }
+        client = RedisClient.create(redisUri(lettuceConnectionFactory));
+        client.setOptions(ClientOptions.builder().protocolVersion(ProtocolVersion.RESP3).build());
+        client.addListener(new RedisConnectionStateListener() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress socketAddress) {
+                onReconnected(handler);
+            }
+
+            @Override
+            public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+                // 重连后重新开启跟踪并唤醒所有等待线程
+            }
+
+            @Override
+            public void onRedisExceptionCaught(RedisChannelHandler<?, ?> handler, Throwable cause) {
+                log.warn("client tracking connection error", cause);
+            }
+        });
+        StatefulRedisConnection<String, String> trackingConnection = client.connect();
+        trackingConnection.addListener(this::onPush);
+        trackingConnection.sync().clientTracking(TrackingArgs.Builder.enabled());
+        connection = trackingConnection;
+    }
+
+    @Override
+    public void destroy() {
+        if (Objects.nonNull(connection)) {
+            connection.close();
+        }
+        if (Objects.nonNull(client)) {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * 收到失效消息，唤醒等待对应锁的线程，key 为空表示数据库被清空，唤醒所有等待线程
+     *
+     * @param message 推送消息
+     */
+    private void onPush(PushMessage message) {
+        if (!INVALIDATE.equals(message.getType())) {
+            return;
+        }
+        List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+        Object keys = content.size() > 1 ? content.get(1) : null;
+        if (!(keys instanceof List)) {
+            trackedNames.forEach(notifier::wakeLocal);
+            trackedNames.clear();
+            return;
+        }
+        for (Object key : (List<?>) keys) {
+            String name = key instanceof ByteBuffer ? StringCodec.UTF8.decodeKey((ByteBuffer) key) : String.valueOf(key);
+            trackedNames.remove(name);
+            notifier.wakeLocal(name);
+        }
+    }
+
+    /**
+     * 重连后服务端的跟踪状态已丢失，重新开启跟踪，并唤醒所有等待线程重新读取
+     *
+     * @param handler 重连的连接
+     */
+    private void onReconnected(RedisChannelHandler<?, ?> handler) {
+        StatefulRedisConnection<String, String> trackingConnection = connection;
+        if (Objects.isNull(trackingConnection) || handler != trackingConnection) {
+            return;
+        }
+        // 在事件循环线程中回调，只能发送异步命令
+        trackingConnection.async().clientTracking(TrackingArgs.Builder.enabled());
+        trackedNames.forEach(notifier::wakeLocal);
+        trackedNames.clear();
+    }
+
+    /**
+     * 按连接工厂的单机配置和客户端配置创建地址
+     *
+     * @param connectionFactory 连接工厂
+     * @return 地址
+     */
+    private RedisURI redisUri(LettuceConnectionFactory connectionFactory) {
+        RedisStandaloneConfiguration config = connectionFactory.getStandaloneConfiguration();
+        RedisURI.Builder builder = RedisURI.builder()
+                .withHost(config.getHostName())
+                .withPort(config.getPort())
+                .withDatabase(config.getDatabase())
+                .withSsl(connectionFactory.isUseSsl())
+                .withVerifyPeer(connectionFactory.isVerifyPeer())
+                .withStartTls(connectionFactory.isStartTls())
+                .withTimeout(Duration.ofMillis(connectionFactory.getTimeout()));
+        config.getPassword().toOptional().ifPresent(password -> {
+            if (Objects.nonNull(config.getUsername())) {
+                builder.withAuthentication(config.getUsername(), password);
+            } else {
+                builder.withPassword(password);
+            }
+        });
+        return builder.build();
+    }
+}
@@ -0,0 +1,328 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/20
+ * @description 锁续期看门狗
+ * 所有持有的锁共用一个续期线程，续期时间由哈希时间轮管理，每个周期把到期的锁合并为一次 Lua 调用批量续期
+ * 开启槽位感知时每个槽位一次调用，各槽位的调用异步并行发送，全部返回后再处理结果
+ * 续期脚本可以按续期记录指定，同一脚本的续期合并调用，如读写锁使用自己的续期脚本
+ */
+@Slf4j
+@Component
+public class RedisLockWatchdog implements InitializingBean, DisposableBean {
+
+    private final RedisLockProperties properties;
+
+    private final RedisLockAsyncExecutor asyncExecutor;
+
+    private final TimingWheel<Renewal> wheel;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "redis-lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RedisLockWatchdog(StringRedisTemplate redisTemplate, RedisLockProperties properties) {
+        this.properties = properties;
+        this.asyncExecutor = new RedisLockAsyncExecutor(redisTemplate);
+        this.wheel = new TimingWheel<>(properties.getWatchdogWheelSize(), properties.getWatchdogTick());
+    }
+
+    /**
+     * 注册续期
+     *
+     * @param name           锁名称
+     * @param value          锁的值
+     * @param failureHandler 续期失败回调，同一批次失败的续期合并回调一次
+     * @return 续期记录
+     */
+    public Renewal register(String name, String value, Consumer<List<Renewal>> failureHandler) {
+        return registerAll(Collections.singletonList(name), value, failureHandler);
+    }
+
+    /**
+     * 使用指定的续期脚本注册续期
+     * 脚本参数与 renew.lua 一致：KEYS 为锁名称，ARGV[1] 为有效期，ARGV[i + 1] 为 KEYS[i] 的锁的值，返回续期失败的下标
+     *
+     * @param name           锁名称
+     * @param value          锁的值
+     * @param script         续期脚本
+     * @param failureHandler 续期失败回调，同一批次失败的续期合并回调一次
+     * @return 续期记录
+     */
+    @SuppressWarnings("rawtypes")
+    public Renewal register(String name, String value, RedisScript<List> script,
+                            Consumer<List<Renewal>> failureHandler) {
+        Renewal renewal = new Renewal(Collections.singletonList(name), value, script, failureHandler);
+        renewal.timeout = wheel.add(renewal, renewInterval());
+        return renewal;
+    }
+
+    /**
+     * 批量注册续期，每个锁各自一条续期记录，各自续期失败
+     *
+     * @param names          锁名称
+     * @param value          锁的值
+     * @param failureHandler 续期失败回调，同一批次失败的续期合并回调一次
+     * @return 续期记录，顺序与锁名称一致
+     */
+    public List<Renewal> registerEach(List<String> names, String value, Consumer<List<Renewal>> failureHandler) {
+        List<Renewal> renewals = new ArrayList<>(names.size());
+        long delay = renewInterval();
+        for (String name : names) {
+            Renewal renewal = new Renewal(Collections.singletonList(name), value, RedisLockScripts.RENEW,
+                    failureHandler);
+            renewal.timeout = wheel.add(renewal, delay);
+            renewals.add(renewal);
+        }
+        return renewals;
+    }
+
+    /**
+     * 多个锁共用一条续期记录，任意一个续期失败视为整条记录失败
+     *
+     * @param names          锁名称
+     * @param value          锁的值
+     * @param failureHandler 续期失败回调，同一批次失败的续期合并回调一次
+     * @return 续期记录
+     */
+    public Renewal registerAll(Collection<String> names, String value, Consumer<List<Renewal>> failureHandler) {
+        Renewal renewal = new Renewal(names, value, RedisLockScripts.RENEW, failureHandler);
+        renewal.timeout = wheel.add(renewal, renewInterval());
+        return renewal;
+    }
+
+    /**
+     * 取消续期
+     *
+     * @param renewal 续期记录
+     */
+    public void cancel(Renewal renewal) {
+        if (Objects.nonNull(renewal)) {
+            renewal.cancelled = true;
+            renewal.timeout.cancel();
+        }
+    }
+
+    /**
+     * 从续期记录中移除一个锁，全部移除后取消续期
+     *
+     * @param renewal 续期记录
+     * @param name    锁名称
+     */
+    public void cancel(Renewal renewal, String name) {
+        if (Objects.isNull(renewal)) {
+            return;
+        }
+        renewal.names.remove(name);
+        if (renewal.names.isEmpty()) {
+            cancel(renewal);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        long tick = wheel.getTickDuration();
+        executor.scheduleAtFixedRate(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 续期间隔，有效期的一半
+     */
+    private long renewInterval() {
+        return properties.getLeaseTime() / 2;
+    }
+
+    /**
+     * 每个周期推进时间轮，到期的续期记录分批续期
+     * 周期任务抛出异常后不会再执行，所有锁都将停止续期，因此捕获全部异常
+     */
+    private void tick() {
+        try {
+            List<Renewal> due = wheel.advance().stream()
+                    .filter(renewal -> !renewal.cancelled)
+                    .collect(Collectors.toList());
+            int batchSize = properties.getRenewBatchSize();
+            for (int i = 0; i < due.size(); i += batchSize) {
+                renewBatch(due.subList(i, Math.min(i + batchSize, due.size())));
+            }
+        } catch (Throwable e) {
+            log.error("watchdog tick error", e);
+        }
+    }
+
+    /**
+     * 续期一批锁，每个续期脚本、每个槽位一次 Lua 调用，并行发送后等待全部返回，并回调续期失败的锁
+     *
+     * @param batch 续期记录
+     */
+    @SuppressWarnings("rawtypes")
+    private void renewBatch(List<Renewal> batch) {
+        boolean[] failed = new boolean[batch.size()];
+        boolean[] retry = new boolean[batch.size()];
+        Collection<RenewCall> calls = groupCalls(batch);
+        List<CompletableFuture<List>> futures = new ArrayList<>(calls.size());
+        for (RenewCall call : calls) {
+            futures.add(asyncExecutor.executeList(call.script, call.keys,
+                    call.args.toArray(new String[0])));
+        }
+        Iterator<CompletableFuture<List>> results = futures.iterator();
+        for (RenewCall call : calls) {
+            List<?> failedIndexes;
+            try {
+                failedIndexes = results.next().join();
+            } catch (Exception e) {
+                // 下个周期重试
+                log.warn("renew lock fail, batch size is {}", batch.size(), e);
+                call.owners.forEach(owner -> retry[owner] = true);
+                continue;
+            }
+            if (Objects.nonNull(failedIndexes)) {
+                failedIndexes.forEach(index -> failed[call.owners.get(((Long) index).intValue() - 1)] = true);
+            }
+        }
+        // 续期成功的重新放入时间轮，失败的按回调分组，批量清理
+        Map<Consumer<List<Renewal>>, List<Renewal>> failedMap = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Renewal renewal = batch.get(i);
+            if (!failed[i] && retry[i]) {
+                renewal.timeout = wheel.add(renewal, 0);
+                continue;
+            }
+            if (!failed[i]) {
+                renewal.timeout = wheel.add(renewal, renewInterval());
+                continue;
+            }
+            log.warn("renew lock fail, keys are {}", renewal.getNames());
+            if (!renewal.cancelled) {
+                failedMap.computeIfAbsent(renewal.failureHandler, k -> new ArrayList<>()).add(renewal);
+            }
+        }
+        failedMap.forEach((handler, renewals) -> {
+            try {
+                handler.accept(renewals);
+            } catch (Exception e) {
+                log.warn("handle renew failure error", e);
+            }
+        });
+    }
+
+    /**
+     * 组装续期脚本调用，按续期脚本分组，开启槽位感知时再按槽位分组，每组一次调用
+     *
+     * @param batch 续期记录
+     * @return 续期脚本调用
+     */
+    private Collection<RenewCall> groupCalls(List<Renewal> batch) {
+        Map<List<Object>, RenewCall> callMap = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Renewal renewal = batch.get(i);
+            for (String name : renewal.names) {
+                int slot = properties.isSlotAware() ? RedisLockKeys.slot(name) : 0;
+                RenewCall call = callMap.computeIfAbsent(Arrays.asList(renewal.script, slot),
+                        k -> new RenewCall(renewal.script));
+                call.keys.add(name);
+                call.args.add(renewal.getValue());
+                call.owners.add(i);
+            }
+        }
+        return callMap.values();
+    }
+
+    /**
+     * 一次续期脚本调用
+     */
+    private class RenewCall {
+
+        @SuppressWarnings("rawtypes")
+        private final RedisScript<List> script;
+
+        private final List<String> keys = new ArrayList<>();
+
+        private final List<String> args = new ArrayList<>(Collections.singletonList(
+                String.valueOf(properties.getLeaseTime())));
+
+        /**
+         * 每个 key 对应的续期记录下标
+         */
+        private final List<Integer> owners = new ArrayList<>();
+
+        @SuppressWarnings("rawtypes")
+        RenewCall(RedisScript<List> script) {
+            this.script = script;
+        }
+    }
+
+    /**
+     * 续期记录
+     */
+    @Getter
+    public static class Renewal {
+        /**
+         * 锁名称，多个锁可以共用一条续期记录
+         */
+        private final Set<String> names = ConcurrentHashMap.newKeySet();
+        /**
+         * 锁的值
+         */
+        private final String value;
+        /**
+         * 续期脚本
+         */
+        @SuppressWarnings("rawtypes")
+        private final RedisScript<List> script;
+        /**
+         * 续期失败回调
+         */
+        private final Consumer<List<Renewal>> failureHandler;
+        /**
+         * 时间轮中的任务
+         */
+        private volatile TimingWheel.Timeout<Renewal> timeout;
+
+        private volatile boolean cancelled;
+
+        @SuppressWarnings("rawtypes")
+        Renewal(Collection<String> names, String value, RedisScript<List> script,
+                Consumer<List<Renewal>> failureHandler) {
+            this.names.addAll(names);
+            this.value = value;
+            this.script = script;
+            this.failureHandler = failureHandler;
+        }
+    }
+}
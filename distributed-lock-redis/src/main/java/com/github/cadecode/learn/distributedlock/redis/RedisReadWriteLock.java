@@ -0,0 +1,358 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/7
+ * @description Redis 版分布式读写锁
+ * 读者数量和写者保存在锁名称对应的一个 hash 中，全部由 Lua 脚本修改，读锁之间共享，读写、写写互斥
+ * 同一节点的读者在 Redis 中共用一个计数字段，每把锁在本节点只有一条续期记录，由看门狗与其他锁合并续期，一次覆盖本节点的所有读者和写者
+ * 各节点的读锁带有过期时间，节点宕机后其读锁过期被清除，不会一直阻塞写者，过期时间统一使用 Redis 服务器时间
+ * 开启写者优先时，写者等待期间不再加新的读锁
+ * 读写锁可重入，持有写锁的线程可以再加读锁（降级），持有读锁时不能加写锁（升级）
+ * 同一个锁名称不要混用 RedisLock 和 RedisReadWriteLock
+ */
+@Slf4j
+@Component
+public class RedisReadWriteLock {
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisLockProperties properties;
+
+    private final RedisLockNotifier notifier;
+
+    private final RedisLockWatchdog watchdog;
+
+    private final BackoffStrategy backoffStrategy;
+
+    /**
+     * 本节点持有的读写锁
+     */
+    private final Map<String, LocalState> stateMap = new ConcurrentHashMap<>();
+
+    private final Consumer<List<RedisLockWatchdog.Renewal>> renewFailureHandler = this::onRenewFail;
+
+    public RedisReadWriteLock(StringRedisTemplate redisTemplate, RedisLockProperties properties,
+                              RedisLockNotifier notifier, RedisLockWatchdog watchdog, BackoffStrategy backoffStrategy) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.notifier = notifier;
+        this.watchdog = watchdog;
+        this.backoffStrategy = backoffStrategy;
+    }
+
+    /**
+     * 获取读锁
+     *
+     * @param name 锁名称
+     * @return 读锁
+     */
+    public NamedLock readLock(String name) {
+        return new NamedLock(name, false);
+    }
+
+    /**
+     * 获取写锁
+     *
+     * @param name 锁名称
+     * @return 写锁
+     */
+    public NamedLock writeLock(String name) {
+        return new NamedLock(name, true);
+    }
+
+    /**
+     * 当前线程的持有者标识，由节点标识和线程 id 组成
+     *
+     * @return 持有者标识
+     */
+    public String ownerToken() {
+        return RedisLockSupport.ownerToken(properties);
+    }
+
+    /**
+     * 获取锁，失败后订阅释放消息，收到消息立即重试，否则按退避时间重试
+     *
+     * @param name      锁名称
+     * @param write     是否写锁
+     * @param totalTime 超时时间（毫秒），Long.MAX_VALUE 表示一直等待
+     * @return 是否获取到
+     */
+    private boolean acquire(String name, boolean write, long totalTime) {
+        if (Objects.isNull(name)) {
+            throw new RuntimeException("lock name cannot be null");
+        }
+        if (reenter(name, write)) {
+            return true;
+        }
+        String value = ownerToken();
+        long current = System.currentTimeMillis();
+        Long ttl = tryAcquire(name, write, value);
+        if (Objects.isNull(ttl)) {
+            return true;
+        }
+        if (totalTime <= 0 || RedisLockSupport.leaseExceeds(properties, ttl, totalTime)) {
+            abandon(name, write, value);
+            return false;
+        }
+        RedisLockNotifier.Waiter waiter = notifier.subscribe(name, value);
+        BackoffStrategy.Backoff backoff = backoffStrategy.newBackoff();
+        boolean acquired = false;
+        try {
+            boolean notified = false;
+            long remain;
+            while ((remain = totalTime == Long.MAX_VALUE
+                    ? Long.MAX_VALUE : totalTime - (System.currentTimeMillis() - current)) >= 0) {
+                ttl = tryAcquire(name, write, value);
+                if (Objects.isNull(ttl)) {
+                    acquired = true;
+                    return true;
+                }
+                // 没有收到释放消息，锁在超时前不可能过期
+                if (!notified && RedisLockSupport.leaseExceeds(properties, ttl, remain)) {
+                    return false;
+                }
+                notified = waiter.await(RedisLockSupport.waitTime(backoff, ttl, remain));
+            }
+        } finally {
+            notifier.unsubscribe(waiter);
+            if (!acquired) {
+                abandon(name, write, value);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 检查重入，当前线程已持有时只在本地增加重入次数
+     *
+     * @param name  锁名称
+     * @param write 是否写锁
+     * @return 是否重入
+     */
+    private boolean reenter(String name, boolean write) {
+        long threadId = Thread.currentThread().getId();
+        boolean[] reentrant = {false};
+        stateMap.computeIfPresent(name, (k, state) -> {
+            if (write && state.writerThread == threadId) {
+                state.writeCount++;
+                reentrant[0] = true;
+            } else if (write && state.readCounts.containsKey(threadId)) {
+                throw new RuntimeException("read lock cannot be upgraded to write lock, key is " + name);
+            } else if (!write && state.readCounts.containsKey(threadId)) {
+                state.readCounts.merge(threadId, 1, Integer::sum);
+                reentrant[0] = true;
+            }
+            return state;
+        });
+        return reentrant[0];
+    }
+
+    /**
+     * 尝试一次加锁，成功后登记到本地，第一次持有时开始续期
+     *
+     * @param name  锁名称
+     * @param write 是否写锁
+     * @param value 锁的值
+     * @return 设置成功返回 null，失败返回锁的剩余有效期（毫秒）
+     */
+    private Long tryAcquire(String name, boolean write, String value) {
+        String leaseTime = String.valueOf(properties.getLeaseTime());
+        String preference = properties.isWriterPreference() ? "1" : "0";
+        Long ttl = write
+                ? redisTemplate.execute(RedisLockScripts.RW_ACQUIRE_WRITE, keys(name),
+                value, leaseTime, String.valueOf(properties.getWriterIntentTimeout()), preference)
+                : redisTemplate.execute(RedisLockScripts.RW_ACQUIRE_READ, keys(name),
+                properties.getNodeId(), leaseTime, value, preference);
+        if (Objects.nonNull(ttl)) {
+            return ttl;
+        }
+        long threadId = Thread.currentThread().getId();
+        stateMap.compute(name, (k, state) -> {
+            if (Objects.isNull(state)) {
+                state = new LocalState();
+                state.renewal = watchdog.register(name, properties.getNodeId(), RedisLockScripts.RW_RENEW,
+                        renewFailureHandler);
+            }
+            if (write) {
+                state.writerThread = threadId;
+                state.writerValue = value;
+                state.writeCount = 1;
+            } else {
+                state.readCounts.put(threadId, 1);
+            }
+            return state;
+        });
+        return null;
+    }
+
+    /**
+     * 释放锁，重入次数归零后才在 Redis 中释放，本节点不再持有时停止续期
+     *
+     * @param name  锁名称
+     * @param write 是否写锁
+     */
+    private void release(String name, boolean write) {
+        long threadId = Thread.currentThread().getId();
+        String[] writerValue = {null};
+        boolean[] released = {false};
+        stateMap.computeIfPresent(name, (k, state) -> {
+            if (write) {
+                if (state.writerThread != threadId || --state.writeCount > 0) {
+                    return state;
+                }
+                writerValue[0] = state.writerValue;
+                state.writerThread = -1;
+                state.writerValue = null;
+            } else {
+                Integer count = state.readCounts.get(threadId);
+                if (Objects.isNull(count)) {
+                    return state;
+                }
+                if (count > 1) {
+                    state.readCounts.put(threadId, count - 1);
+                    return state;
+                }
+                state.readCounts.remove(threadId);
+            }
+            released[0] = true;
+            if (state.isEmpty()) {
+                watchdog.cancel(state.renewal);
+                return null;
+            }
+            return state;
+        });
+        if (!released[0]) {
+            return;
+        }
+        String channel = RedisLockKeys.channel(name);
+        if (write) {
+            redisTemplate.execute(RedisLockScripts.RW_RELEASE_WRITE, Collections.singletonList(name),
+                    writerValue[0], channel, RedisLockNotifier.RELEASE_MESSAGE);
+        } else {
+            redisTemplate.execute(RedisLockScripts.RW_RELEASE_READ, Collections.singletonList(name),
+                    properties.getNodeId(), channel, RedisLockNotifier.RELEASE_MESSAGE);
+        }
+        notifier.wakeLocal(name);
+    }
+
+    /**
+     * 续期失败时视为本节点持有的读锁和写锁都已丢失，清除本地记录
+     *
+     * @param renewals 续期失败的记录
+     */
+    private void onRenewFail(List<RedisLockWatchdog.Renewal> renewals) {
+        for (RedisLockWatchdog.Renewal renewal : renewals) {
+            for (String name : renewal.getNames()) {
+                // 只清除仍属于该续期记录的锁，避免误删新锁
+                stateMap.computeIfPresent(name, (k, state) -> state.renewal == renewal ? null : state);
+            }
+        }
+    }
+
+    /**
+     * 放弃等待，写者清除自己的等待标记
+     */
+    private void abandon(String name, boolean write, String value) {
+        if (write && properties.isWriterPreference()) {
+            redisTemplate.execute(RedisLockScripts.RELEASE, Collections.singletonList(RedisLockKeys.writeIntent(name)),
+                    value, "", "");
+        }
+    }
+
+    private List<String> keys(String name) {
+        return Arrays.asList(name, RedisLockKeys.writeIntent(name));
+    }
+
+    /**
+     * 绑定锁名称的读锁或写锁
+     */
+    public class NamedLock {
+
+        private final String name;
+
+        private final boolean write;
+
+        NamedLock(String name, boolean write) {
+            this.name = name;
+            this.write = write;
+        }
+
+        /**
+         * 阻塞式的获取锁
+         */
+        public void lock() {
+            acquire(name, write, Long.MAX_VALUE);
+        }
+
+        /**
+         * 尝试一次获取锁
+         *
+         * @return 是否获取到
+         */
+        public boolean tryLock() {
+            return acquire(name, write, 0);
+        }
+
+        /**
+         * 尝试在一段时间内获取锁
+         *
+         * @param timeout  超时时间
+         * @param timeUnit 时间单位
+         * @return 是否获取到
+         */
+        public boolean tryLock(long timeout, TimeUnit timeUnit) {
+            return acquire(name, write, timeUnit.toMillis(timeout));
+        }
+
+        /**
+         * 释放锁
+         */
+        public void unlock() {
+            release(name, write);
+        }
+    }
+
+    /**
+     * 本节点持有的读写锁，只在 stateMap 的 compute 中修改
+     */
+    private static class LocalState {
+        /**
+         * 持有读锁的线程及其重入次数
+         */
+        private final Map<Long, Integer> readCounts = new ConcurrentHashMap<>();
+        /**
+         * 持有写锁的线程 id，没有时为 -1
+         */
+        private volatile long writerThread = -1;
+        /**
+         * 写锁的值
+         */
+        private volatile String writerValue;
+        /**
+         * 写锁重入次数
+         */
+        private int writeCount;
+        /**
+         * 续期记录，覆盖本节点的所有读者和写者
+         */
+        private RedisLockWatchdog.Renewal renewal;
+
+        boolean isEmpty() {
+            return readCounts.isEmpty() && writerThread == -1;
+        }
+    }
+}
@@ -0,0 +1,586 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import com.github.cadecode.learn.distributedlock.common.DistributedLock;
+import com.github.cadecode.learn.distributedlock.common.LockHandle;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/4
+ * @description Redlock 版分布式锁，在 N 个相互独立的 Redis 主节点上加锁，多数节点成功才算获取到锁
+ * 加锁、续期、释放都并行发送到所有节点，加锁耗时约等于多数节点中最慢的一个，而不是 N 个节点之和
+ * 锁的有效时间扣除加锁耗时和时钟漂移，剩余有效时间不足时视为失败并在所有节点上释放
+ * 剩余有效时间记录在本地，通过 validity 查询，续期间隔不超过剩余有效时间的一半，续期后按续期耗时重新计算
+ * 节点之间没有发布订阅，等待锁时只按退避时间重试
+ * 续期由时间轮管理，到期时异步发送到所有节点，多数节点确认后重新放入时间轮，不阻塞定时线程
+ * 需要自行创建，例如以 @Bean 方式传入各节点的连接工厂
+ */
+@Slf4j
+public class RedlockLock implements DistributedLock, DisposableBean {
+
+    /**
+     * 时钟漂移系数，按有效期的比例计算，另加 2 毫秒
+     */
+    private static final double CLOCK_DRIFT_FACTOR = 0.01;
+
+    private final List<RedisLockAsyncExecutor> nodes;
+
+    private final RedisLockProperties properties;
+
+    private final BackoffStrategy backoffStrategy;
+
+    /**
+     * 多数节点数量
+     */
+    private final int quorum;
+
+    private final Map<String, RedisLockSupport.ReentrantContent<Renewal>> contentMap = new ConcurrentHashMap<>();
+
+    private final TimingWheel<Renewal> wheel;
+
+    /**
+     * 定时线程，推进续期时间轮、调度异步加锁重试和节点超时，只发送异步命令不阻塞，单线程足够
+     */
+    private final ScheduledExecutorService timerExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "redlock-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RedlockLock(List<RedisConnectionFactory> connectionFactories, RedisLockProperties properties,
+                       BackoffStrategy backoffStrategy) {
+        if (Objects.isNull(connectionFactories) || connectionFactories.isEmpty()) {
+            throw new RuntimeException("redlock requires at least one redis node");
+        }
+        this.nodes = new ArrayList<>(connectionFactories.size());
+        for (RedisConnectionFactory connectionFactory : connectionFactories) {
+            StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+            RedisLockScripts.preload(redisTemplate);
+            this.nodes.add(new RedisLockAsyncExecutor(redisTemplate));
+        }
+        this.properties = properties;
+        this.backoffStrategy = backoffStrategy;
+        this.quorum = connectionFactories.size() / 2 + 1;
+        this.wheel = new TimingWheel<>(properties.getWatchdogWheelSize(), properties.getWatchdogTick());
+        long tick = wheel.getTickDuration();
+        timerExecutor.scheduleAtFixedRate(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 阻塞式的获取锁
+     *
+     * @param name 锁名称
+     */
+    @Override
+    public void lock(String name) {
+        tryLock(name, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 尝试一次获取锁
+     *
+     * @param name 锁名称
+     * @return 是否获取到
+     */
+    @Override
+    public boolean tryLock(String name) {
+        if (RedisLockSupport.checkReentrant(contentMap, name)) {
+            contentMap.get(name).setCount(contentMap.get(name).getCount() + 1);
+            return true;
+        }
+        return tryAcquire(name, ownerToken());
+    }
+
+    /**
+     * 尝试在一段时间内获取锁，失败后按退避时间重试
+     *
+     * @param name     锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 是否获取到
+     */
+    @Override
+    public boolean tryLock(String name, long timeout, TimeUnit timeUnit) {
+        if (RedisLockSupport.checkReentrant(contentMap, name)) {
+            contentMap.get(name).setCount(contentMap.get(name).getCount() + 1);
+            return true;
+        }
+        String value = ownerToken();
+        long totalTime = timeUnit.toMillis(timeout);
+        long current = System.currentTimeMillis();
+        BackoffStrategy.Backoff backoff = backoffStrategy.newBackoff();
+        while (true) {
+            if (tryAcquire(name, value)) {
+                return true;
+            }
+            long remain = totalTime == Long.MAX_VALUE
+                    ? Long.MAX_VALUE : totalTime - (System.currentTimeMillis() - current);
+            if (remain <= 0) {
+                return false;
+            }
+            // 不响应中断，与 RedisLock 一致
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(Math.min(backoff.nextDelay(), remain)));
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * 释放锁，并行在所有节点上校验持有者后删除
+     *
+     * @param name 锁名称
+     */
+    @Override
+    public void unlock(String name) {
+        if (!RedisLockSupport.checkReentrant(contentMap, name)) {
+            return;
+        }
+        RedisLockSupport.ReentrantContent<Renewal> lockContent = contentMap.get(name);
+        Integer count = lockContent.getCount();
+        if (count > 0) {
+            // 重入次数减一
+            lockContent.setCount(--count);
+        }
+        if (count == 0) {
+            contentMap.remove(name);
+            cancel(lockContent.getRenewal());
+            releaseAll(name, lockContent.getValue()).join();
+        }
+    }
+
+    /**
+     * 异步获取锁，由返回的句柄持有锁，不占用调用线程
+     *
+     * @param name 锁名称
+     * @return 锁句柄
+     */
+    @Override
+    public CompletableFuture<LockHandle> lockAsync(String name) {
+        return new AsyncAcquire(name, Long.MAX_VALUE).start();
+    }
+
+    /**
+     * 异步在一段时间内获取锁，失败后按退避时间重试
+     *
+     * @param name     锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 锁句柄，超时返回 null
+     */
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String name, long timeout, TimeUnit timeUnit) {
+        return new AsyncAcquire(name, timeUnit.toMillis(timeout)).start();
+    }
+
+    /**
+     * 异步释放锁，可以在任意线程调用，重复释放直接返回
+     *
+     * @param handle 加锁返回的锁句柄
+     * @return 释放完成
+     */
+    @Override
+    public CompletableFuture<Void> unlockAsync(LockHandle handle) {
+        if (!(handle instanceof RedlockLockHandle)) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("lock handle is not created by RedlockLock"));
+            return future;
+        }
+        RedlockLockHandle lockHandle = (RedlockLockHandle) handle;
+        if (!lockHandle.released.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        cancel(lockHandle.getRenewal());
+        return releaseAll(lockHandle.getName(), lockHandle.getToken());
+    }
+
+    /**
+     * 当前线程的持有者标识，由节点标识和线程 id 组成
+     *
+     * @return 持有者标识
+     */
+    public String ownerToken() {
+        return RedisLockSupport.ownerToken(properties);
+    }
+
+    /**
+     * 当前线程持有的锁在本地时钟下的剩余有效时间，已扣除加锁或续期耗时和时钟漂移
+     * 超过该时间仍未续期成功时，多数节点上的锁可能已经过期
+     *
+     * @param name 锁名称
+     * @return 剩余有效时间（毫秒），未持有时为 0
+     */
+    public long validity(String name) {
+        if (!RedisLockSupport.checkReentrant(contentMap, name)) {
+            return 0;
+        }
+        return contentMap.get(name).getRenewal().remainValidity();
+    }
+
+    /**
+     * 异步加锁句柄在本地时钟下的剩余有效时间
+     *
+     * @param handle 加锁返回的锁句柄
+     * @return 剩余有效时间（毫秒），已释放或续期失败时为 0
+     */
+    public long validity(LockHandle handle) {
+        if (!(handle instanceof RedlockLockHandle) || ((RedlockLockHandle) handle).released.get()) {
+            return 0;
+        }
+        return ((RedlockLockHandle) handle).getRenewal().remainValidity();
+    }
+
+    @Override
+    public void destroy() {
+        timerExecutor.shutdownNow();
+    }
+
+    /**
+     * 同步加锁，成功后注册续期并保存锁内容
+     *
+     * @param name  锁名称
+     * @param value 锁的值
+     * @return 是否获取到
+     */
+    private boolean tryAcquire(String name, String value) {
+        long validity = acquire(name, value).join();
+        if (validity <= 0) {
+            return false;
+        }
+        RedisLockSupport.ReentrantContent<Renewal> lockContent =
+                new RedisLockSupport.ReentrantContent<>(null, value, 1, Thread.currentThread());
+        lockContent.setRenewal(register(name, value, validity, () -> contentMap.remove(name, lockContent)));
+        contentMap.put(name, lockContent);
+        return true;
+    }
+
+    /**
+     * 并行在所有节点上加锁，多数节点成功且剩余有效时间大于 0 时成功，否则在所有节点上释放
+     *
+     * @param name  锁名称
+     * @param value 锁的值
+     * @return 剩余有效时间（毫秒），未获取到为 0，不会以异常结束
+     */
+    private CompletableFuture<Long> acquire(String name, String value) {
+        long leaseTime = properties.getLeaseTime();
+        long start = System.currentTimeMillis();
+        return quorum(node -> node.execute(RedisLockScripts.ACQUIRE,
+                Collections.singletonList(name), value, String.valueOf(leaseTime))
+                .thenApply(Objects::isNull))
+                .thenCompose(reached -> {
+                    long validity = validity(start);
+                    if (reached && validity > 0) {
+                        return CompletableFuture.completedFuture(validity);
+                    }
+                    return releaseAll(name, value).thenApply(released -> 0L);
+                });
+    }
+
+    /**
+     * 从发送命令开始计算的剩余有效时间，扣除耗时和时钟漂移
+     *
+     * @param start 发送命令的时间
+     * @return 剩余有效时间（毫秒），可能小于等于 0
+     */
+    private long validity(long start) {
+        long leaseTime = properties.getLeaseTime();
+        long drift = (long) (leaseTime * CLOCK_DRIFT_FACTOR) + 2;
+        return leaseTime - (System.currentTimeMillis() - start) - drift;
+    }
+
+    /**
+     * 注册续期，放入时间轮
+     *
+     * @param name           锁名称
+     * @param value          锁的值
+     * @param validity       剩余有效时间（毫秒）
+     * @param failureHandler 续期失败回调
+     * @return 续期记录
+     */
+    private Renewal register(String name, String value, long validity, Runnable failureHandler) {
+        Renewal renewal = new Renewal(name, value, failureHandler);
+        renewal.validUntil = System.currentTimeMillis() + validity;
+        renewal.timeout = wheel.add(renewal, renewInterval(validity));
+        return renewal;
+    }
+
+    /**
+     * 取消续期
+     *
+     * @param renewal 续期记录
+     */
+    private void cancel(Renewal renewal) {
+        renewal.cancelled = true;
+        renewal.timeout.cancel();
+    }
+
+    /**
+     * 续期间隔，有效期的三分之一，多数节点确认需要额外的时间
+     * 不超过剩余有效时间的一半，加锁或续期耗时较长时提前续期
+     *
+     * @param validity 剩余有效时间（毫秒）
+     */
+    private long renewInterval(long validity) {
+        return Math.min(properties.getLeaseTime() / 3, validity / 2);
+    }
+
+    /**
+     * 每个周期推进时间轮，到期的续期记录异步续期
+     * 周期任务抛出异常后不会再执行，因此捕获全部异常
+     */
+    private void tick() {
+        try {
+            for (Renewal renewal : wheel.advance()) {
+                if (!renewal.cancelled) {
+                    renew(renewal);
+                }
+            }
+        } catch (Throwable e) {
+            log.error("redlock renew tick error", e);
+        }
+    }
+
+    /**
+     * 并行在所有节点上续期，多数节点确认且剩余有效时间大于 0 时更新有效时间并重新放入时间轮
+     * 多数节点续期失败或耗时超过有效期时视为锁已丢失
+     *
+     * @param renewal 续期记录
+     */
+    private void renew(Renewal renewal) {
+        long start = System.currentTimeMillis();
+        quorum(node -> node.executeList(RedisLockScripts.RENEW, Collections.singletonList(renewal.name),
+                String.valueOf(properties.getLeaseTime()), renewal.value)
+                .thenApply(failedIndexes -> Objects.isNull(failedIndexes) || failedIndexes.isEmpty()))
+                .thenAccept(reached -> {
+                    if (renewal.cancelled) {
+                        return;
+                    }
+                    long validity = validity(start);
+                    if (reached && validity > 0) {
+                        renewal.validUntil = System.currentTimeMillis() + validity;
+                        renewal.timeout = wheel.add(renewal, renewInterval(validity));
+                        return;
+                    }
+                    log.warn("renew redlock fail, key is {}", renewal.name);
+                    renewal.cancelled = true;
+                    if (Objects.nonNull(renewal.failureHandler)) {
+                        renewal.failureHandler.run();
+                    }
+                });
+    }
+
+    /**
+     * 并行在所有节点上释放锁，不发布释放消息，最多等待一个节点超时时间
+     *
+     * @param name  锁名称
+     * @param value 锁的值
+     * @return 释放完成，不会以异常结束
+     */
+    private CompletableFuture<Void> releaseAll(String name, String value) {
+        List<CompletableFuture<Long>> futures = new ArrayList<>(nodes.size());
+        for (RedisLockAsyncExecutor node : nodes) {
+            futures.add(node.execute(RedisLockScripts.RELEASE, Collections.singletonList(name), value, "",
+                    RedisLockNotifier.RELEASE_MESSAGE));
+        }
+        CompletableFuture<Boolean> released = new CompletableFuture<>();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .whenComplete((result, e) -> released.complete(Objects.isNull(e)));
+        return withTimeout(released, false).thenAccept(success -> {
+            if (!success) {
+                // 未释放的节点等待锁过期
+                log.warn("release redlock on some nodes fail, key is {}", name);
+            }
+        });
+    }
+
+    /**
+     * 并行向所有节点发送命令，多数节点成功或多数节点已不可能成功时完成，最多等待一个节点超时时间
+     *
+     * @param command 单个节点的命令，结果为是否成功
+     * @return 是否多数节点成功，不会以异常结束
+     */
+    private CompletableFuture<Boolean> quorum(Function<RedisLockAsyncExecutor, CompletableFuture<Boolean>> command) {
+        CompletableFuture<Boolean> quorumFuture = new CompletableFuture<>();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int maxFailures = nodes.size() - quorum;
+        for (RedisLockAsyncExecutor node : nodes) {
+            CompletableFuture<Boolean> result;
+            try {
+                result = command.apply(node);
+            } catch (Exception e) {
+                result = new CompletableFuture<>();
+                result.completeExceptionally(e);
+            }
+            result.whenComplete((success, e) -> {
+                if (Objects.isNull(e) && Boolean.TRUE.equals(success)) {
+                    if (succeeded.incrementAndGet() >= quorum) {
+                        quorumFuture.complete(true);
+                    }
+                } else if (failed.incrementAndGet() > maxFailures) {
+                    quorumFuture.complete(false);
+                }
+            });
+        }
+        return withTimeout(quorumFuture, false);
+    }
+
+    /**
+     * 节点超时时间后以默认值完成
+     *
+     * @param future   future
+     * @param fallback 超时时的结果
+     * @return 传入的 future
+     */
+    private <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, T fallback) {
+        ScheduledFuture<?> timeout = timerExecutor.schedule(() -> future.complete(fallback),
+                properties.getRedlockNodeTimeout(), TimeUnit.MILLISECONDS);
+        future.whenComplete((result, e) -> timeout.cancel(false));
+        return future;
+    }
+
+    /**
+     * 一次异步加锁过程
+     * 每次尝试在所有节点上并行加锁，失败后由定时线程按退避时间重试
+     */
+    private class AsyncAcquire {
+
+        private final String name;
+
+        /**
+         * 每个句柄使用独立的持有者标识，不依赖线程
+         */
+        private final String value = properties.getNodeId() + ":" + UUID.randomUUID();
+
+        private final long deadline;
+
+        private final BackoffStrategy.Backoff backoff = backoffStrategy.newBackoff();
+
+        private final CompletableFuture<LockHandle> future = new CompletableFuture<>();
+
+        private volatile ScheduledFuture<?> retry;
+
+        AsyncAcquire(String name, long totalTime) {
+            if (Objects.isNull(name)) {
+                throw new RuntimeException("lock name cannot be null");
+            }
+            this.name = name;
+            long current = System.currentTimeMillis();
+            this.deadline = totalTime > Long.MAX_VALUE - current ? Long.MAX_VALUE : current + totalTime;
+        }
+
+        CompletableFuture<LockHandle> start() {
+            // 调用方取消时停止重试
+            future.whenComplete((handle, e) -> {
+                ScheduledFuture<?> scheduled = retry;
+                if (future.isCancelled() && Objects.nonNull(scheduled)) {
+                    scheduled.cancel(false);
+                }
+            });
+            attempt();
+            return future;
+        }
+
+        private void attempt() {
+            if (future.isDone()) {
+                return;
+            }
+            // 在定时线程中处理结果，调用方的回调不会运行在 Redis 客户端的 IO 线程上
+            acquire(name, value).whenCompleteAsync(this::onResult, timerExecutor);
+        }
+
+        private void onResult(Long validity, Throwable e) {
+            if (Objects.nonNull(e)) {
+                future.completeExceptionally(e);
+                return;
+            }
+            if (validity > 0) {
+                RedlockLockHandle handle = new RedlockLockHandle(name, value, register(name, value, validity, null));
+                if (!future.complete(handle)) {
+                    // 调用方已取消，释放刚拿到的锁
+                    unlockAsync(handle);
+                }
+                return;
+            }
+            long remain = deadline - System.currentTimeMillis();
+            if (remain <= 0) {
+                future.complete(null);
+                return;
+            }
+            retry = timerExecutor.schedule(this::attempt, Math.min(backoff.nextDelay(), remain),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 续期记录
+     */
+    private static class Renewal {
+
+        private final String name;
+
+        private final String value;
+
+        /**
+         * 续期失败回调，异步句柄没有回调
+         */
+        private final Runnable failureHandler;
+
+        private volatile TimingWheel.Timeout<Renewal> timeout;
+
+        private volatile boolean cancelled;
+
+        /**
+         * 本地时钟下锁在多数节点上保证有效的截止时间
+         */
+        private volatile long validUntil;
+
+        Renewal(String name, String value, Runnable failureHandler) {
+            this.name = name;
+            this.value = value;
+            this.failureHandler = failureHandler;
+        }
+
+        /**
+         * 剩余有效时间，取消或续期失败后为 0
+         */
+        long remainValidity() {
+            return cancelled ? 0 : Math.max(validUntil - System.currentTimeMillis(), 0);
+        }
+    }
+
+    /**
+     * 异步加锁的句柄，维护续期记录
+     */
+    @Getter
+    private static class RedlockLockHandle extends LockHandle {
+
+        private final Renewal renewal;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        RedlockLockHandle(String name, String token, Renewal renewal) {
+            super(name, token);
+            this.renewal = renewal;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import com.github.cadecode.learn.distributedlock.common.DistributedLock;
+import com.github.cadecode.learn.distributedlock.common.LockHandle;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/6
+ * @description 分片版 Redis 分布式锁，按锁名称的一致性哈希（jump hash）把锁分散到多个相互独立的 Redis 实例
+ * 每个分片是一个完整的 RedisLock，拥有自己的连接、订阅、看门狗和合并队列，等待、续期、通知都只在所在分片内完成
+ * 与 Redlock 不同，每把锁只在一个实例上，不做多数确认，吞吐量随分片数量增加
+ * 在末尾追加分片时只有约 1/N 的锁名称会迁移，调整分片期间仍持有的锁可能被另一个分片重复授予，需要停机或等锁释放后再调整
+ * 需要自行创建，例如以 @Bean 方式传入各分片的连接工厂
+ */
+@Slf4j
+public class ShardedRedisLock implements DistributedLock, InitializingBean, DisposableBean {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final List<Shard> shards;
+
+    public ShardedRedisLock(List<RedisConnectionFactory> connectionFactories, RedisLockProperties properties,
+                            BackoffStrategy backoffStrategy) {
+        if (Objects.isNull(connectionFactories) || connectionFactories.isEmpty()) {
+            throw new RuntimeException("sharded lock requires at least one redis node");
+        }
+        // 各分片共用统计
+        RedisLockMetrics metrics = new RedisLockMetrics();
+        this.shards = new ArrayList<>(connectionFactories.size());
+        for (RedisConnectionFactory connectionFactory : connectionFactories) {
+            shards.add(new Shard(connectionFactory, properties, backoffStrategy, metrics));
+        }
+    }
+
+    /**
+     * 阻塞式的获取锁
+     *
+     * @param name 锁名称
+     */
+    @Override
+    public void lock(String name) {
+        shardOf(name).lock.lock(name);
+    }
+
+    /**
+     * 尝试一次获取锁
+     *
+     * @param name 锁名称
+     * @return 是否获取到
+     */
+    @Override
+    public boolean tryLock(String name) {
+        return shardOf(name).lock.tryLock(name);
+    }
+
+    /**
+     * 尝试在一段时间内获取锁
+     *
+     * @param name     锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 是否获取到
+     */
+    @Override
+    public boolean tryLock(String name, long timeout, TimeUnit timeUnit) {
+        return shardOf(name).lock.tryLock(name, timeout, timeUnit);
+    }
+
+    /**
+     * 释放锁
+     *
+     * @param name 锁名称
+     */
+    @Override
+    public void unlock(String name) {
+        shardOf(name).lock.unlock(name);
+    }
+
+    /**
+     * 异步加锁
+     *
+     * @param name 锁名称
+     * @return 锁句柄
+     */
+    @Override
+    public CompletableFuture<LockHandle> lockAsync(String name) {
+        return shardOf(name).lock.lockAsync(name);
+    }
+
+    /**
+     * 异步尝试在一段时间内获取锁
+     *
+     * @param name     锁名称
+     * @param timeout  超时时间
+     * @param timeUnit 时间单位
+     * @return 锁句柄，超时返回 null
+     */
+    @Override
+    public CompletableFuture<LockHandle> tryLockAsync(String name, long timeout, TimeUnit timeUnit) {
+        return shardOf(name).lock.tryLockAsync(name, timeout, timeUnit);
+    }
+
+    /**
+     * 异步释放锁
+     *
+     * @param handle 加锁返回的锁句柄
+     * @return 释放完成
+     */
+    @Override
+    public CompletableFuture<Void> unlockAsync(LockHandle handle) {
+        return shardOf(handle.getName()).lock.unlockAsync(handle);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        for (Shard shard : shards) {
+            shard.start();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (Shard shard : shards) {
+            try {
+                shard.stop();
+            } catch (Exception e) {
+                log.warn("stop redis lock shard error", e);
+            }
+        }
+    }
+
+    /**
+     * 锁名称所在的分片
+     *
+     * @param name 锁名称
+     * @return 分片
+     */
+    private Shard shardOf(String name) {
+        if (Objects.isNull(name)) {
+            throw new RuntimeException("lock name cannot be null");
+        }
+        return shards.get(jumpHash(hash(name), shards.size()));
+    }
+
+    /**
+     * 锁名称的 64 位 FNV-1a 哈希，不依赖 JVM 实现，各节点计算结果一致
+     */
+    static long hash(String name) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * jump consistent hash，分片数量由 n 增加到 n + 1 时只有约 1/(n + 1) 的 key 移动到新分片
+     */
+    static int jumpHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    /**
+     * 一个分片，按 Spring 容器中的装配方式手动创建一套 RedisLock 组件
+     */
+    private static class Shard {
+
+        private final RedisLockNotifier notifier;
+
+        private final RedisLockWatchdog watchdog;
+
+        private final RedisLockBatcher batcher;
+
+        private final RedisLockTracker tracker;
+
+        private final RedisLock lock;
+
+        Shard(RedisConnectionFactory connectionFactory, RedisLockProperties properties,
+              BackoffStrategy backoffStrategy, RedisLockMetrics metrics) {
+            StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+            this.notifier = new RedisLockNotifier(connectionFactory, properties);
+            this.watchdog = new RedisLockWatchdog(redisTemplate, properties);
+            this.batcher = new RedisLockBatcher(redisTemplate, properties);
+            this.tracker = new RedisLockTracker(connectionFactory, properties, notifier);
+            this.lock = new RedisLock(redisTemplate, properties, notifier, watchdog, backoffStrategy, batcher,
+                    new RedisLockAsyncExecutor(redisTemplate), tracker, metrics);
+        }
+
+        void start() {
+            notifier.afterPropertiesSet();
+            watchdog.afterPropertiesSet();
+            batcher.afterPropertiesSet();
+            tracker.afterPropertiesSet();
+            lock.afterPropertiesSet();
+        }
+
+        void stop() throws Exception {
+            lock.destroy();
+            tracker.destroy();
+            batcher.destroy();
+            watchdog.destroy();
+            notifier.destroy();
+        }
+    }
+}
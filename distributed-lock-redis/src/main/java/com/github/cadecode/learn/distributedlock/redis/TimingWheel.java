@@ -0,0 +1,165 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/21
+ * @description 哈希时间轮
+ * 添加和取消都是 O(1)，add/cancel 可以在任意线程调用，advance 只能由单个线程按 tick 周期调用
+ */
+public class TimingWheel<T> {
+
+    /**
+     * 每格时长（毫秒）
+     */
+    private final long tickDuration;
+
+    private final int mask;
+
+    private final Set<Timeout<T>>[] buckets;
+
+    /**
+     * 新添加的任务先放入队列，由推进线程放入对应的格子
+     */
+    private final Queue<Timeout<T>> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 已推进的格数，只在推进线程中修改
+     */
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int wheelSize, long tickDuration) {
+        if (wheelSize <= 0 || tickDuration <= 0) {
+            throw new IllegalArgumentException("wheel size and tick duration must be positive");
+        }
+        // 格数向上取整为 2 的幂
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickDuration = tickDuration;
+        this.mask = size - 1;
+        this.buckets = new Set[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * 添加任务
+     *
+     * @param task  任务
+     * @param delay 延迟时间（毫秒）
+     * @return Timeout，可用于取消
+     */
+    public Timeout<T> add(T task, long delay) {
+        Timeout<T> timeout = new Timeout<>(task, Math.max(delay, 0));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 推进一格，返回到期的任务
+     *
+     * @return 到期任务
+     */
+    public List<T> advance() {
+        transferPending();
+        List<T> expired = new ArrayList<>();
+        Iterator<Timeout<T>> iterator = buckets[(int) (tick & mask)].iterator();
+        while (iterator.hasNext()) {
+            Timeout<T> timeout = iterator.next();
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                continue;
+            }
+            iterator.remove();
+            if (!timeout.cancelled) {
+                expired.add(timeout.task);
+            }
+        }
+        tick++;
+        return expired;
+    }
+
+    /**
+     * 把新任务放入格子，当前格在本次推进中处理
+     */
+    private void transferPending() {
+        Timeout<T> timeout;
+        while (Objects.nonNull(timeout = pending.poll())) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long ticks = (timeout.delay + tickDuration - 1) / tickDuration;
+            timeout.rounds = ticks / buckets.length;
+            timeout.bucket = buckets[(int) ((tick + ticks) & mask)];
+            timeout.bucket.add(timeout);
+            // 放入格子前被取消
+            if (timeout.cancelled) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * 时间轮中的任务
+     */
+    public static final class Timeout<T> {
+        /**
+         * 任务
+         */
+        private final T task;
+        /**
+         * 延迟时间
+         */
+        private final long delay;
+        /**
+         * 剩余轮数，只在推进线程中修改
+         */
+        private long rounds;
+        /**
+         * 所在格子
+         */
+        private volatile Set<Timeout<T>> bucket;
+
+        private volatile boolean cancelled;
+
+        Timeout(T task, long delay) {
+            this.task = task;
+            this.delay = delay;
+        }
+
+        public T getTask() {
+            return task;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * 取消任务，直接从格子中移除
+         */
+        public void cancel() {
+            cancelled = true;
+            Set<Timeout<T>> current = bucket;
+            if (Objects.nonNull(current)) {
+                current.remove(this);
+            }
+        }
+    }
+}
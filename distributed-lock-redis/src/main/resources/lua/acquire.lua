@@ -0,0 +1,10 @@
+-- 加锁
+-- KEYS[1]: 锁名称
+-- ARGV[1]: 锁的值（持有者标识）
+-- ARGV[2]: 有效期（毫秒）
+-- 加锁成功返回 nil，失败返回锁的剩余有效期（毫秒）
+-- 锁已属于同一持有者时也视为失败，重入只由本地记录判断，节点重启后的接管使用 RedisLock.recover
+if redis.call('set', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then
+    return nil
+end
+return redis.call('pttl', KEYS[1])
@@ -0,0 +1,15 @@
+-- 批量加锁，全部成功或全部失败
+-- KEYS: 锁名称
+-- ARGV[1]: 锁的值（持有者标识）
+-- ARGV[2]: 有效期（毫秒）
+-- 加锁成功返回 nil，失败返回第一个被占用的锁的剩余有效期（毫秒）
+-- 锁已属于同一持有者时也视为被占用，已持有的锁由调用方按重入处理
+for _, key in ipairs(KEYS) do
+    if redis.call('exists', key) == 1 then
+        return redis.call('pttl', key)
+    end
+end
+for _, key in ipairs(KEYS) do
+    redis.call('set', key, ARGV[1], 'PX', ARGV[2])
+end
+return nil
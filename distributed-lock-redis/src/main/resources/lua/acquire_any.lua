@@ -0,0 +1,16 @@
+-- 从候选锁中获取第一把空闲的锁
+-- KEYS: 候选锁名称
+-- ARGV[1]: 锁的值（持有者标识）
+-- ARGV[2]: 有效期（毫秒）
+-- 加锁成功返回 {锁的下标}，失败返回 {0, 最短的剩余有效期（毫秒）}，候选锁都不会过期时为 -1
+local minTtl = -1
+for i, key in ipairs(KEYS) do
+    if redis.call('set', key, ARGV[1], 'NX', 'PX', ARGV[2]) then
+        return {i}
+    end
+    local ttl = redis.call('pttl', key)
+    if ttl >= 0 and (minTtl < 0 or ttl < minTtl) then
+        minTtl = ttl
+    end
+end
+return {0, minTtl}
@@ -0,0 +1,55 @@
+-- 排队加锁，锁空闲时只有队首等待者可以获得锁
+-- KEYS[1]: 锁名称
+-- KEYS[2]: 等待队列
+-- KEYS[3]: 等待者超时时间
+-- ARGV[1]: 锁的值（持有者标识）
+-- ARGV[2]: 有效期（毫秒）
+-- ARGV[3]: 当前时间戳（毫秒）
+-- ARGV[4]: 等待者过期时间戳，为 0 时不排队
+-- ARGV[5]: 移交给等待者时的有效期（毫秒）
+-- ARGV[6]: 通知频道
+-- ARGV[7]: 移交消息前缀
+-- 加锁成功返回 nil，失败返回锁的剩余有效期（毫秒）
+local owner = redis.call('get', KEYS[1])
+-- 锁已移交给自己
+if owner == ARGV[1] then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    redis.call('zrem', KEYS[3], ARGV[1])
+    redis.call('lrem', KEYS[2], 0, ARGV[1])
+    return nil
+end
+if not owner then
+    -- 清理已过期的队首等待者
+    local head = redis.call('lindex', KEYS[2], 0)
+    while head do
+        local expire = redis.call('zscore', KEYS[3], head)
+        if expire and tonumber(expire) > tonumber(ARGV[3]) then
+            break
+        end
+        redis.call('lpop', KEYS[2])
+        redis.call('zrem', KEYS[3], head)
+        head = redis.call('lindex', KEYS[2], 0)
+    end
+    if (not head) or head == ARGV[1] then
+        redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2])
+        if head then
+            redis.call('lpop', KEYS[2])
+            redis.call('zrem', KEYS[3], head)
+        end
+        return nil
+    end
+    -- 锁空闲但有人排在前面，直接移交给队首等待者
+    redis.call('lpop', KEYS[2])
+    redis.call('zrem', KEYS[3], head)
+    redis.call('set', KEYS[1], head, 'PX', ARGV[5])
+    redis.call('publish', ARGV[6], ARGV[7] .. head)
+end
+if ARGV[4] ~= '0' then
+    -- 首次排队加入队尾，已在队列中只刷新过期时间
+    if redis.call('zadd', KEYS[3], ARGV[4], ARGV[1]) == 1 then
+        redis.call('rpush', KEYS[2], ARGV[1])
+    end
+    redis.call('pexpireat', KEYS[2], ARGV[4])
+    redis.call('pexpireat', KEYS[3], ARGV[4])
+end
+return redis.call('pttl', KEYS[1])
@@ -0,0 +1,15 @@
+-- 粘滞模式下本节点其他线程认领空闲的锁，校验原持有者后改为新持有者，保留剩余有效期
+-- KEYS[1]: 锁名称
+-- ARGV[1]: 原持有者标识
+-- ARGV[2]: 新持有者标识
+-- 认领成功返回 1，锁已不属于原持有者返回 0
+if redis.call('get', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+local ttl = redis.call('pttl', KEYS[1])
+if ttl > 0 then
+    redis.call('set', KEYS[1], ARGV[2], 'PX', ttl)
+else
+    redis.call('set', KEYS[1], ARGV[2])
+end
+return 1
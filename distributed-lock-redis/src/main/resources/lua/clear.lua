@@ -0,0 +1,8 @@
+-- 强制清除锁，不检查持有者，并发布释放消息
+-- KEYS[1]: 锁名称
+-- ARGV[1]: 通知频道
+-- ARGV[2]: 释放消息
+-- 返回删除的 key 数量
+local deleted = redis.call('del', KEYS[1])
+redis.call('publish', ARGV[1], ARGV[2])
+return deleted
@@ -0,0 +1,12 @@
+-- 放弃排队
+-- KEYS[1]: 锁名称
+-- KEYS[2]: 等待队列
+-- KEYS[3]: 等待者超时时间
+-- ARGV[1]: 等待者标识
+-- 锁在放弃前已移交给该等待者返回 1，否则返回 0
+redis.call('zrem', KEYS[3], ARGV[1])
+redis.call('lrem', KEYS[2], 0, ARGV[1])
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    return 1
+end
+return 0
@@ -0,0 +1,14 @@
+-- 释放锁，只删除值与持有者一致的锁，并发布释放消息
+-- KEYS[1]: 锁名称
+-- ARGV[1]: 锁的值
+-- ARGV[2]: 通知频道，为空时不发布消息
+-- ARGV[3]: 释放消息
+-- 释放成功返回 1，锁不属于持有者返回 0
+if redis.call('get', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+redis.call('del', KEYS[1])
+if ARGV[2] ~= '' then
+    redis.call('publish', ARGV[2], ARGV[3])
+end
+return 1
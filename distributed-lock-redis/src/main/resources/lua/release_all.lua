@@ -0,0 +1,15 @@
+-- 批量释放锁，只删除值与持有者一致的锁，并发布释放消息
+-- KEYS: 锁名称
+-- ARGV[1]: 锁的值
+-- ARGV[2]: 释放消息
+-- ARGV[i + 2]: KEYS[i] 的通知频道
+-- 返回释放的锁数量
+local released = 0
+for i, key in ipairs(KEYS) do
+    if redis.call('get', key) == ARGV[1] then
+        redis.call('del', key)
+        redis.call('publish', ARGV[i + 2], ARGV[2])
+        released = released + 1
+    end
+end
+return released
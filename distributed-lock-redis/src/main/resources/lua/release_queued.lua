@@ -0,0 +1,28 @@
+-- 释放锁，有等待者时直接移交给队首等待者，只通知该等待者
+-- KEYS[1]: 锁名称
+-- KEYS[2]: 等待队列
+-- KEYS[3]: 等待者超时时间
+-- ARGV[1]: 锁的值
+-- ARGV[2]: 通知频道
+-- ARGV[3]: 释放消息
+-- ARGV[4]: 当前时间戳（毫秒）
+-- ARGV[5]: 移交给等待者时的有效期（毫秒）
+-- ARGV[6]: 移交消息前缀
+-- 锁不属于持有者返回 0，释放返回 1，移交返回 2
+if redis.call('get', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+local head = redis.call('lpop', KEYS[2])
+while head do
+    local expire = redis.call('zscore', KEYS[3], head)
+    redis.call('zrem', KEYS[3], head)
+    if expire and tonumber(expire) > tonumber(ARGV[4]) then
+        redis.call('set', KEYS[1], head, 'PX', ARGV[5])
+        redis.call('publish', ARGV[2], ARGV[6] .. head)
+        return 2
+    end
+    head = redis.call('lpop', KEYS[2])
+end
+redis.call('del', KEYS[1])
+redis.call('publish', ARGV[2], ARGV[3])
+return 1
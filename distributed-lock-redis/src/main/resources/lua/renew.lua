@@ -0,0 +1,14 @@
+-- 批量续期，只续期值与持有者一致的锁
+-- KEYS: 需要续期的锁
+-- ARGV[1]: 有效期（毫秒）
+-- ARGV[i + 1]: KEYS[i] 的值
+-- 返回续期失败的 key 下标（从 1 开始）
+local failed = {}
+for i, key in ipairs(KEYS) do
+    if redis.call('get', key) == ARGV[i + 1] then
+        redis.call('pexpire', key, ARGV[1])
+    else
+        table.insert(failed, i)
+    end
+end
+return failed
@@ -0,0 +1,56 @@
+-- 加读锁
+-- KEYS[1]: 锁名称，hash 结构，mode 为 read 或 write，writer 为写者标识，r:<节点> 为节点持有的读锁数量，e:<节点> 为节点读锁的过期时间
+-- KEYS[2]: 写者等待标记
+-- ARGV[1]: 节点标识
+-- ARGV[2]: 有效期（毫秒）
+-- ARGV[3]: 当前线程的持有者标识，持有写锁的线程可以再加读锁
+-- ARGV[4]: 是否写者优先，为 1 时有写者等待就不再加新的读锁
+-- 读锁过期时间使用 Redis 服务器时间，与续期脚本一致
+-- 加锁成功返回 nil，失败返回锁的剩余有效期（毫秒）
+-- 清除过期节点的读锁，节点宕机后其读锁不再续期
+local function purge(now)
+    local values = redis.call('hgetall', KEYS[1])
+    for i = 1, #values, 2 do
+        local field = values[i]
+        if string.sub(field, 1, 2) == 'e:' and tonumber(values[i + 1]) < now then
+            redis.call('hdel', KEYS[1], field, 'r:' .. string.sub(field, 3))
+        end
+    end
+end
+
+local function has_readers()
+    for _, field in ipairs(redis.call('hkeys', KEYS[1])) do
+        if string.sub(field, 1, 2) == 'r:' then
+            return true
+        end
+    end
+    return false
+end
+
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+purge(now)
+local mode = redis.call('hget', KEYS[1], 'mode')
+if mode == 'read' and not has_readers() then
+    redis.call('del', KEYS[1])
+    mode = false
+end
+if mode == 'write' then
+    if redis.call('hget', KEYS[1], 'writer') ~= ARGV[3] then
+        return redis.call('pttl', KEYS[1])
+    end
+elseif ARGV[4] == '1' and redis.call('exists', KEYS[2]) == 1 then
+    -- 有写者在等待，新的读者让行
+    local ttl = redis.call('pttl', KEYS[1])
+    if ttl < 0 then
+        ttl = redis.call('pttl', KEYS[2])
+    end
+    return ttl
+else
+    redis.call('hset', KEYS[1], 'mode', 'read')
+end
+redis.call('hincrby', KEYS[1], 'r:' .. ARGV[1], 1)
+redis.call('hset', KEYS[1], 'e:' .. ARGV[1], now + tonumber(ARGV[2]))
+redis.call('pexpire', KEYS[1], ARGV[2])
+return nil
@@ -0,0 +1,57 @@
+-- 加写锁
+-- KEYS[1]: 锁名称，结构同 rw_acquire_read.lua
+-- KEYS[2]: 写者等待标记
+-- ARGV[1]: 锁的值（持有者标识）
+-- ARGV[2]: 有效期（毫秒）
+-- ARGV[3]: 写者等待标记有效期（毫秒）
+-- ARGV[4]: 是否写者优先，为 1 时加锁失败设置写者等待标记
+-- 清除过期读锁时使用 Redis 服务器时间，与续期脚本一致
+-- 加锁成功返回 nil，失败返回锁的剩余有效期（毫秒）
+-- 清除过期节点的读锁，节点宕机后其读锁不再续期
+local function purge(now)
+    local values = redis.call('hgetall', KEYS[1])
+    for i = 1, #values, 2 do
+        local field = values[i]
+        if string.sub(field, 1, 2) == 'e:' and tonumber(values[i + 1]) < now then
+            redis.call('hdel', KEYS[1], field, 'r:' .. string.sub(field, 3))
+        end
+    end
+end
+
+local function has_readers()
+    for _, field in ipairs(redis.call('hkeys', KEYS[1])) do
+        if string.sub(field, 1, 2) == 'r:' then
+            return true
+        end
+    end
+    return false
+end
+
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+purge(now)
+local mode = redis.call('hget', KEYS[1], 'mode')
+if mode == 'read' and not has_readers() then
+    redis.call('del', KEYS[1])
+    mode = false
+end
+if not mode then
+    redis.call('hset', KEYS[1], 'mode', 'write')
+    redis.call('hset', KEYS[1], 'writer', ARGV[1])
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    -- 只清除自己的等待标记，其他写者的标记保留
+    if redis.call('get', KEYS[2]) == ARGV[1] then
+        redis.call('del', KEYS[2])
+    end
+    return nil
+end
+-- 写锁已属于同一持有者（如节点重启前加的锁），直接接管
+if mode == 'write' and redis.call('hget', KEYS[1], 'writer') == ARGV[1] then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return nil
+end
+if ARGV[4] == '1' then
+    redis.call('set', KEYS[2], ARGV[1], 'PX', ARGV[3])
+end
+return redis.call('pttl', KEYS[1])
@@ -0,0 +1,42 @@
+-- 释放读锁，节点的读锁数量减一，没有读者时删除锁并发布释放消息
+-- KEYS[1]: 锁名称
+-- ARGV[1]: 节点标识
+-- ARGV[2]: 通知频道
+-- ARGV[3]: 释放消息
+-- 清除过期读锁时使用 Redis 服务器时间，与续期脚本一致
+-- 释放成功返回 1，节点未持有读锁返回 0
+-- 清除过期节点的读锁，节点宕机后其读锁不再续期
+local function purge(now)
+    local values = redis.call('hgetall', KEYS[1])
+    for i = 1, #values, 2 do
+        local field = values[i]
+        if string.sub(field, 1, 2) == 'e:' and tonumber(values[i + 1]) < now then
+            redis.call('hdel', KEYS[1], field, 'r:' .. string.sub(field, 3))
+        end
+    end
+end
+
+local function has_readers()
+    for _, field in ipairs(redis.call('hkeys', KEYS[1])) do
+        if string.sub(field, 1, 2) == 'r:' then
+            return true
+        end
+    end
+    return false
+end
+
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+if redis.call('hexists', KEYS[1], 'r:' .. ARGV[1]) == 0 then
+    return 0
+end
+if redis.call('hincrby', KEYS[1], 'r:' .. ARGV[1], -1) <= 0 then
+    redis.call('hdel', KEYS[1], 'r:' .. ARGV[1], 'e:' .. ARGV[1])
+end
+purge(now)
+if redis.call('hget', KEYS[1], 'mode') == 'read' and not has_readers() then
+    redis.call('del', KEYS[1])
+    redis.call('publish', ARGV[2], ARGV[3])
+end
+return 1
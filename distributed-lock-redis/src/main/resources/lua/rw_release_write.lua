@@ -0,0 +1,26 @@
+-- 释放写锁，只释放写者与持有者一致的锁，持有写锁时加的读锁仍在时降级为读锁，并发布释放消息
+-- KEYS[1]: 锁名称
+-- ARGV[1]: 锁的值（持有者标识）
+-- ARGV[2]: 通知频道
+-- ARGV[3]: 释放消息
+-- 释放成功返回 1，锁不属于持有者返回 0
+local function has_readers()
+    for _, field in ipairs(redis.call('hkeys', KEYS[1])) do
+        if string.sub(field, 1, 2) == 'r:' then
+            return true
+        end
+    end
+    return false
+end
+
+if redis.call('hget', KEYS[1], 'writer') ~= ARGV[1] then
+    return 0
+end
+redis.call('hdel', KEYS[1], 'writer')
+if has_readers() then
+    redis.call('hset', KEYS[1], 'mode', 'read')
+else
+    redis.call('del', KEYS[1])
+end
+redis.call('publish', ARGV[2], ARGV[3])
+return 1
@@ -0,0 +1,26 @@
+-- 批量续期读写锁，每把锁一次覆盖本节点的所有读者和写者，参数与 renew.lua 一致，由看门狗合并调用
+-- KEYS: 需要续期的锁
+-- ARGV[1]: 有效期（毫秒）
+-- ARGV[i + 1]: KEYS[i] 的节点标识
+-- 本节点持有读锁（存在 r:<节点>）或写锁（写者标识以节点标识开头）时续期
+-- 读锁过期时间使用 Redis 服务器时间，与加锁、释放脚本一致
+-- 返回续期失败的 key 下标（从 1 开始）
+redis.replicate_commands()
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local failed = {}
+for i, key in ipairs(KEYS) do
+    local node = ARGV[i + 1]
+    local reading = redis.call('hexists', key, 'r:' .. node) == 1
+    local writer = redis.call('hget', key, 'writer')
+    local writing = writer and string.sub(writer, 1, #node + 1) == node .. ':'
+    if reading or writing then
+        if reading then
+            redis.call('hset', key, 'e:' .. node, now + tonumber(ARGV[1]))
+        end
+        redis.call('pexpire', key, ARGV[1])
+    else
+        table.insert(failed, i)
+    end
+end
+return failed
@@ -0,0 +1,63 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/22
+ * @description 退避策略测试，等待时间是随机的，只校验取值范围
+ */
+public class BackoffStrategyTest {
+
+    private static final int ATTEMPTS = 100;
+
+    @Test
+    public void of() {
+        assertEquals(FixedBackoffStrategy.class, BackoffStrategy.of(BackoffStrategy.Type.FIXED, 100, 5000).getClass());
+        assertEquals(ExponentialBackoffStrategy.class,
+                BackoffStrategy.of(BackoffStrategy.Type.EXPONENTIAL, 100, 5000).getClass());
+        assertEquals(DecorrelatedJitterBackoffStrategy.class,
+                BackoffStrategy.of(BackoffStrategy.Type.DECORRELATED, 100, 5000).getClass());
+    }
+
+    @Test
+    public void fixed() {
+        BackoffStrategy.Backoff backoff = new FixedBackoffStrategy(100).newBackoff();
+        for (int i = 0; i < ATTEMPTS; i++) {
+            assertEquals(100, backoff.nextDelay());
+        }
+    }
+
+    @Test
+    public void exponential() {
+        BackoffStrategy.Backoff backoff = new ExponentialBackoffStrategy(100, 5000).newBackoff();
+        // 次数超过位移上限后也不会溢出
+        for (int i = 0; i < ATTEMPTS; i++) {
+            long delay = backoff.nextDelay();
+            long limit = Math.min(5000, 100L << Math.min(i, 30));
+            assertTrue(delay >= 0 && delay <= limit, "attempt " + i + " delay " + delay);
+        }
+    }
+
+    @Test
+    public void decorrelatedJitter() {
+        BackoffStrategy.Backoff backoff = new DecorrelatedJitterBackoffStrategy(100, 5000).newBackoff();
+        long last = 100;
+        for (int i = 0; i < ATTEMPTS; i++) {
+            long delay = backoff.nextDelay();
+            assertTrue(delay >= 100 && delay <= Math.min(5000, last * 3), "attempt " + i + " delay " + delay);
+            last = delay;
+        }
+    }
+
+    @Test
+    public void decorrelatedJitterCapBelowBase() {
+        BackoffStrategy.Backoff backoff = new DecorrelatedJitterBackoffStrategy(100, 50).newBackoff();
+        for (int i = 0; i < ATTEMPTS; i++) {
+            assertEquals(100, backoff.nextDelay());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/8
+ * @description 测试用的嵌入式 Redis，启动一个本地 redis-server 进程，端口随机
+ * 连接工厂和 StringRedisTemplate 随进程一起创建，关闭时一起销毁
+ */
+final class EmbeddedRedis implements AutoCloseable {
+
+    private static final RedisScript<Long> NUMSUB =
+            new DefaultRedisScript<>("return redis.call('pubsub', 'numsub', KEYS[1])[2]", Long.class);
+
+    private final int port;
+
+    private final RedisServer server;
+
+    private final LettuceConnectionFactory connectionFactory;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private EmbeddedRedis(int port) throws IOException {
+        this.port = port;
+        this.server = new RedisServer(port);
+        server.start();
+        this.connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    /**
+     * 在随机端口启动 Redis
+     *
+     * @return 嵌入式 Redis
+     */
+    static EmbeddedRedis start() {
+        try {
+            return new EmbeddedRedis(freePort());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    LettuceConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    StringRedisTemplate getRedisTemplate() {
+        return redisTemplate;
+    }
+
+    /**
+     * 清空数据，每个测试之间调用
+     */
+    void flushAll() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.flushAll();
+            return null;
+        });
+    }
+
+    /**
+     * 等待频道上出现订阅者，监听容器首次订阅需要建立连接，不能用固定时间等待
+     *
+     * @param channel 频道
+     */
+    void awaitSubscriber(String channel) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            Long count = redisTemplate.execute(NUMSUB, Collections.singletonList(channel));
+            if (Objects.nonNull(count) && count > 0) {
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        throw new IllegalStateException("no subscriber on channel " + channel);
+    }
+
+    @Override
+    public void close() {
+        connectionFactory.destroy();
+        try {
+            server.stop();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import com.github.cadecode.learn.distributedlock.common.DistributedLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/9
+ * @description 公平锁与普通锁的等待时间分布
+ * 64 个线程分布在 4 个模拟节点上竞争同一把锁，每个节点有自己的连接、订阅和看门狗
+ * 采样模式下 p0.99、p0.999 为等待时间的尾部，p1.00 为最长饥饿时间，每次采样都包含固定的持有时间
+ * 默认启动嵌入式 Redis，指定 -Dredis.host、-Dredis.port 时改用外部 Redis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(64)
+@Fork(1)
+public class FairRedisLockBenchmark {
+
+    private static final int NODES = 4;
+
+    private static final String NAME = "benchmark:fair";
+
+    /**
+     * 持有锁的时间（微秒）
+     */
+    private static final long HOLD_MICROS = 200;
+
+    @Param({"false", "true"})
+    private boolean fair;
+
+    private EmbeddedRedis redis;
+
+    private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+    private final List<RedisLockNode> nodes = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String host = System.getProperty("redis.host");
+        int port;
+        if (host == null) {
+            redis = EmbeddedRedis.start();
+            host = "localhost";
+            port = redis.getPort();
+        } else {
+            port = Integer.getInteger("redis.port", 6379);
+        }
+        for (int i = 0; i < NODES; i++) {
+            LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(host, port);
+            connectionFactory.afterPropertiesSet();
+            connectionFactories.add(connectionFactory);
+            nodes.add(new RedisLockNode(connectionFactory, new RedisLockProperties()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (RedisLockNode node : nodes) {
+            node.close();
+        }
+        nodes.clear();
+        connectionFactories.forEach(LettuceConnectionFactory::destroy);
+        connectionFactories.clear();
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    /**
+     * 线程按编号轮流分配到各节点
+     */
+    @State(Scope.Thread)
+    public static class NodeLock {
+
+        private DistributedLock lock;
+
+        @Setup(Level.Trial)
+        public void setup(FairRedisLockBenchmark benchmark, ThreadParams threadParams) {
+            RedisLockNode node = benchmark.nodes.get(threadParams.getThreadIndex() % NODES);
+            lock = benchmark.fair ? node.getFairLock() : node.getLock();
+        }
+    }
+
+    @Benchmark
+    public void lock(NodeLock nodeLock) {
+        nodeLock.lock.lock(NAME);
+        try {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(HOLD_MICROS));
+        } finally {
+            nodeLock.lock.unlock(NAME);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FairRedisLockBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/9
+ * @description FairRedisLock 行为测试，等待者跨节点排队，释放时按到达顺序移交
+ */
+public class FairRedisLockTest {
+
+    private static final String NAME = "test:fair";
+
+    private static EmbeddedRedis redis;
+
+    private RedisLockNode nodeA;
+
+    private RedisLockNode nodeB;
+
+    @BeforeAll
+    public static void startRedis() {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    public static void stopRedis() {
+        redis.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        redis.flushAll();
+        nodeA = new RedisLockNode(redis.getConnectionFactory(), properties());
+        nodeB = new RedisLockNode(redis.getConnectionFactory(), properties());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    private static RedisLockProperties properties() {
+        RedisLockProperties properties = new RedisLockProperties();
+        properties.setWaitPollInterval(10000);
+        properties.setBackoffBase(10000);
+        return properties;
+    }
+
+    @Test
+    public void handoffInArrivalOrder() throws Exception {
+        FairRedisLock holder = nodeA.getFairLock();
+        holder.lock(NAME);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                int index = i;
+                FairRedisLock lock = (i % 2 == 0 ? nodeB : nodeA).getFairLock();
+                futures.add(executor.submit(() -> {
+                    if (!lock.tryLock(NAME, 10, TimeUnit.SECONDS)) {
+                        return false;
+                    }
+                    order.add(index);
+                    lock.unlock(NAME);
+                    return true;
+                }));
+                // 保证按顺序进入等待队列
+                Thread.sleep(200);
+            }
+            holder.unlock(NAME);
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3), order);
+    }
+
+    @Test
+    public void tryLockDoesNotBargeQueue() throws Exception {
+        FairRedisLock holder = nodeA.getFairLock();
+        holder.lock(NAME);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> waiter = executor.submit(() -> {
+                FairRedisLock lock = nodeB.getFairLock();
+                boolean locked = lock.tryLock(NAME, 10, TimeUnit.SECONDS);
+                if (locked) {
+                    Thread.sleep(200);
+                    lock.unlock(NAME);
+                }
+                return locked;
+            });
+            redis.awaitSubscriber(RedisLockKeys.channel(NAME));
+            holder.unlock(NAME);
+            // 锁已移交给排队的等待者，不排队的尝试不能插队
+            assertFalse(nodeA.getFairLock().tryLock(NAME));
+            assertTrue(waiter.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
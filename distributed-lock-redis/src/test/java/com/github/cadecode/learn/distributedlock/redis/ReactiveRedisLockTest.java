@@ -0,0 +1,116 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import com.github.cadecode.learn.distributedlock.common.LockHandle;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/8
+ * @description ReactiveRedisLock 行为测试，与阻塞式 RedisLock 连接同一个嵌入式 Redis
+ */
+public class ReactiveRedisLockTest {
+
+    private static final String NAME = "test:reactive";
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private static EmbeddedRedis redis;
+
+    private RedisLockNode node;
+
+    private ReactiveRedisLock reactiveLock;
+
+    @BeforeAll
+    public static void startRedis() {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    public static void stopRedis() {
+        redis.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        redis.flushAll();
+        RedisLockProperties properties = new RedisLockProperties();
+        properties.setWaitPollInterval(10000);
+        properties.setBackoffBase(10000);
+        properties.getDurability().put("test:durable", RedisLockDurability.ONE);
+        node = new RedisLockNode(redis.getConnectionFactory(), properties);
+        reactiveLock = new ReactiveRedisLock(new ReactiveStringRedisTemplate(redis.getConnectionFactory()),
+                redis.getConnectionFactory(), properties, RedisLockNode.backoffStrategy(properties));
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        reactiveLock.destroy();
+        node.close();
+    }
+
+    @Test
+    public void lockAndUnlock() {
+        LockHandle handle = reactiveLock.lock(NAME).block(TIMEOUT);
+        assertNotNull(handle);
+        assertEquals(handle.getToken(), redis.getRedisTemplate().opsForValue().get(NAME));
+        assertNull(reactiveLock.tryLock(NAME).block(TIMEOUT));
+        reactiveLock.unlock(handle).block(TIMEOUT);
+        assertFalse(redis.getRedisTemplate().hasKey(NAME));
+    }
+
+    @Test
+    public void competesWithBlockingLock() {
+        RedisLock lock = node.getLock();
+        lock.lock(NAME);
+        assertNull(reactiveLock.tryLock(NAME).block(TIMEOUT));
+        lock.unlock(NAME);
+        LockHandle handle = reactiveLock.tryLock(NAME).block(TIMEOUT);
+        assertNotNull(handle);
+        assertFalse(lock.tryLock(NAME));
+        reactiveLock.unlock(handle).block(TIMEOUT);
+    }
+
+    @Test
+    public void waitersWokenByRelease() throws Exception {
+        LockHandle handle = reactiveLock.lock(NAME).block(TIMEOUT);
+        assertNotNull(handle);
+        // 两个等待者共用同一个释放频道订阅，获取锁后立即释放，依次被释放消息唤醒
+        CompletableFuture<LockHandle> first = acquireAndRelease();
+        CompletableFuture<LockHandle> second = acquireAndRelease();
+        redis.awaitSubscriber(RedisLockKeys.channel(NAME));
+        reactiveLock.unlock(handle).block(TIMEOUT);
+        assertNotNull(first.get(5, TimeUnit.SECONDS));
+        assertNotNull(second.get(5, TimeUnit.SECONDS));
+    }
+
+    private CompletableFuture<LockHandle> acquireAndRelease() {
+        return reactiveLock.tryLock(NAME, 5, TimeUnit.SECONDS)
+                .flatMap(h -> reactiveLock.unlock(h).thenReturn(h))
+                .toFuture();
+    }
+
+    @Test
+    public void rejectsNonAsyncDurabilityPerName() {
+        Mono<LockHandle> durable = reactiveLock.tryLock("test:durable");
+        assertThrows(RuntimeException.class, () -> durable.block(TIMEOUT));
+        LockHandle handle = reactiveLock.tryLock(NAME).block(TIMEOUT);
+        assertNotNull(handle);
+        reactiveLock.unlock(handle).block(TIMEOUT);
+    }
+}
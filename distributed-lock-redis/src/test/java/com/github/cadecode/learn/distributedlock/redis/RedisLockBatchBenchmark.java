@@ -0,0 +1,109 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/27
+ * @description 合并加锁请求的吞吐量与时间窗口的关系
+ * 大量线程同时 tryLock 各自的锁，窗口为 0 时关闭合并，每次加锁单独一次往返
+ * 默认启动嵌入式 Redis，指定 -Dredis.host、-Dredis.port 时改用外部 Redis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Threads(128)
+@Fork(1)
+public class RedisLockBatchBenchmark {
+
+    /**
+     * 合并时间窗口（微秒），0 表示不合并
+     */
+    @Param({"0", "50", "200", "1000"})
+    private long window;
+
+    private EmbeddedRedis redis;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private ShardedRedisLock lock;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String host = System.getProperty("redis.host");
+        int port;
+        if (host == null) {
+            redis = EmbeddedRedis.start();
+            host = "localhost";
+            port = redis.getPort();
+        } else {
+            port = Integer.getInteger("redis.port", 6379);
+        }
+        connectionFactory = new LettuceConnectionFactory(host, port);
+        connectionFactory.afterPropertiesSet();
+        RedisLockProperties properties = new RedisLockProperties();
+        properties.setAcquireBatch(window > 0);
+        properties.setAcquireBatchWindow(window);
+        // 单个分片即一套完整的 RedisLock 组件
+        lock = new ShardedRedisLock(Collections.singletonList(connectionFactory), properties,
+                BackoffStrategy.of(properties.getBackoffType(), properties.getBackoffBase(),
+                        properties.getWaitPollInterval()));
+        lock.afterPropertiesSet();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        lock.destroy();
+        connectionFactory.destroy();
+        if (redis != null) {
+            redis.close();
+        }
+    }
+
+    /**
+     * 每个线程使用自己的锁名称，加锁总能成功，只衡量往返开销
+     */
+    @State(Scope.Thread)
+    public static class LockName {
+
+        private final String name = "benchmark:batch:" + UUID.randomUUID();
+    }
+
+    @Benchmark
+    public boolean tryLock(LockName lockName) {
+        boolean locked = lock.tryLock(lockName.name);
+        if (locked) {
+            lock.unlock(lockName.name);
+        }
+        return locked;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RedisLockBatchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
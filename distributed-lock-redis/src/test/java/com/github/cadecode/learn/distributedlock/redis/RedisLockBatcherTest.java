@@ -0,0 +1,109 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/9
+ * @description RedisLockBatcher 测试，合并执行的结果分别返回，停止前后提交的请求都能完成
+ */
+public class RedisLockBatcherTest {
+
+    private static EmbeddedRedis redis;
+
+    @BeforeAll
+    public static void startRedis() {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    public static void stopRedis() {
+        redis.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        redis.flushAll();
+    }
+
+    private static RedisLockBatcher batcher() {
+        RedisLockProperties properties = new RedisLockProperties();
+        properties.setAcquireBatch(true);
+        properties.setAcquireBatchWindow(1000);
+        RedisLockBatcher batcher = new RedisLockBatcher(redis.getRedisTemplate(), properties);
+        batcher.afterPropertiesSet();
+        return batcher;
+    }
+
+    private static Long acquire(RedisLockBatcher batcher, String name, String value) {
+        return batcher.execute(RedisLockScripts.ACQUIRE, Collections.singletonList(name), value, "30000");
+    }
+
+    @Test
+    public void batchedResultsReturnedToEachCaller() throws Exception {
+        RedisLockBatcher batcher = batcher();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                // 每两个请求竞争同一把锁，只有一个成功
+                String name = "test:batch:" + (i / 2);
+                String value = "value-" + i;
+                futures.add(executor.submit(() -> acquire(batcher, name, value)));
+            }
+            int acquired = 0;
+            for (Future<Long> future : futures) {
+                if (future.get(5, TimeUnit.SECONDS) == null) {
+                    acquired++;
+                }
+            }
+            assertEquals(16, acquired);
+        } finally {
+            executor.shutdownNow();
+            batcher.destroy();
+        }
+    }
+
+    @Test
+    public void requestsAroundDestroyComplete() {
+        RedisLockBatcher batcher = batcher();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                List<Future<Long>> futures = new ArrayList<>();
+                for (int i = 0; i < 64; i++) {
+                    String name = "test:destroy:" + i;
+                    futures.add(executor.submit(() -> acquire(batcher, name, "value")));
+                    if (i == 32) {
+                        batcher.destroy();
+                    }
+                }
+                for (Future<Long> future : futures) {
+                    assertNull(future.get());
+                }
+            });
+            // 停止后直接执行
+            assertNull(acquire(batcher, "test:after", "value"));
+            assertNotNull(acquire(batcher, "test:after", "other"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/24
+ * @description 锁相关 key 命名测试，辅助 key 必须与锁位于同一槽位
+ */
+public class RedisLockKeysTest {
+
+    @Test
+    public void hashTag() {
+        assertEquals("order", RedisLockKeys.hashTag("order"));
+        assertEquals("user1", RedisLockKeys.hashTag("{user1}:order"));
+        assertEquals("b", RedisLockKeys.hashTag("a{b}{c}"));
+        // 空 tag 和不成对的花括号按整个名称计算，与 Redis Cluster 一致
+        assertEquals("a{}b{c}", RedisLockKeys.hashTag("a{}b{c}"));
+        assertEquals("a{b", RedisLockKeys.hashTag("a{b"));
+    }
+
+    @Test
+    public void slotTagged() {
+        assertEquals("{order}", RedisLockKeys.slotTagged("order"));
+        assertEquals("{user1}:order", RedisLockKeys.slotTagged("{user1}:order"));
+        // 名称中的 } 会截断外层花括号，改用同槽位的数字 tag
+        String tagged = RedisLockKeys.slotTagged("a{}b");
+        assertTrue(tagged.endsWith("}a{}b"), tagged);
+        assertEquals(RedisLockKeys.slot("a{}b"), RedisLockKeys.slot(tagged));
+    }
+
+    @Test
+    public void slot() {
+        // Redis 文档中 CLUSTER KEYSLOT 的示例
+        assertEquals(11058, RedisLockKeys.slot("somekey"));
+        assertEquals(2515, RedisLockKeys.slot("foo{hash_tag}"));
+        assertEquals(2515, RedisLockKeys.slot("bar{hash_tag}"));
+    }
+
+    @Test
+    public void auxiliaryKeysShareSlot() {
+        for (String name : new String[]{"order", "{user1}:order", "a{b", "a{}b", "a}b", "a{}b{c}", "{}"}) {
+            int slot = RedisLockKeys.slot(name);
+            assertEquals(slot, RedisLockKeys.slot(RedisLockKeys.queue(name)), name);
+            assertEquals(slot, RedisLockKeys.slot(RedisLockKeys.timeout(name)), name);
+            assertEquals(slot, RedisLockKeys.slot(RedisLockKeys.writeIntent(name)), name);
+        }
+    }
+
+    @Test
+    public void keyNames() {
+        assertEquals("distributed-lock:channel:order", RedisLockKeys.channel("order"));
+        assertEquals("distributed-lock:queue:{order}", RedisLockKeys.queue("order"));
+        assertEquals("distributed-lock:timeout:{user1}:order", RedisLockKeys.timeout("{user1}:order"));
+    }
+}
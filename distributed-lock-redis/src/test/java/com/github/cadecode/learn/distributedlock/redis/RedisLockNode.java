@@ -0,0 +1,94 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/8
+ * @description 测试用的模拟节点，按 Spring 容器中的装配方式手动创建一套 RedisLock 组件
+ * 每个节点有自己的节点标识、订阅和看门狗，同一个 JVM 中的多个节点相当于多台机器
+ */
+class RedisLockNode implements AutoCloseable {
+
+    private final RedisLockProperties properties;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisLockNotifier notifier;
+
+    private final RedisLockWatchdog watchdog;
+
+    private final RedisLockBatcher batcher;
+
+    private final RedisLockTracker tracker;
+
+    private final RedisLockMetrics metrics = new RedisLockMetrics();
+
+    private final RedisLock lock;
+
+    private final FairRedisLock fairLock;
+
+    RedisLockNode(RedisConnectionFactory connectionFactory, RedisLockProperties properties) {
+        this.properties = properties;
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.notifier = new RedisLockNotifier(connectionFactory, properties);
+        this.watchdog = new RedisLockWatchdog(redisTemplate, properties);
+        this.batcher = new RedisLockBatcher(redisTemplate, properties);
+        this.tracker = new RedisLockTracker(connectionFactory, properties, notifier);
+        RedisLockAsyncExecutor asyncExecutor = new RedisLockAsyncExecutor(redisTemplate);
+        this.lock = new RedisLock(redisTemplate, properties, notifier, watchdog, backoffStrategy(properties),
+                batcher, asyncExecutor, tracker, metrics);
+        this.fairLock = new FairRedisLock(redisTemplate, properties, notifier, watchdog, backoffStrategy(properties),
+                batcher, asyncExecutor, tracker, metrics);
+        notifier.afterPropertiesSet();
+        watchdog.afterPropertiesSet();
+        batcher.afterPropertiesSet();
+        tracker.afterPropertiesSet();
+        lock.afterPropertiesSet();
+        fairLock.afterPropertiesSet();
+    }
+
+    static BackoffStrategy backoffStrategy(RedisLockProperties properties) {
+        return BackoffStrategy.of(properties.getBackoffType(), properties.getBackoffBase(),
+                properties.getWaitPollInterval());
+    }
+
+    RedisLockProperties getProperties() {
+        return properties;
+    }
+
+    StringRedisTemplate getRedisTemplate() {
+        return redisTemplate;
+    }
+
+    RedisLockNotifier getNotifier() {
+        return notifier;
+    }
+
+    RedisLockWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    RedisLockMetrics getMetrics() {
+        return metrics;
+    }
+
+    RedisLock getLock() {
+        return lock;
+    }
+
+    FairRedisLock getFairLock() {
+        return fairLock;
+    }
+
+    @Override
+    public void close() throws Exception {
+        fairLock.destroy();
+        lock.destroy();
+        tracker.destroy();
+        batcher.destroy();
+        watchdog.destroy();
+        notifier.destroy();
+    }
+}
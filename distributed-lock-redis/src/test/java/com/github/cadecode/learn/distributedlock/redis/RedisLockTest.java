@@ -0,0 +1,324 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import com.github.cadecode.learn.distributedlock.common.LockHandle;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/8
+ * @description RedisLock 行为测试，两个模拟节点连接同一个嵌入式 Redis
+ */
+public class RedisLockTest {
+
+    private static final String NAME = "test:lock";
+
+    private static EmbeddedRedis redis;
+
+    private RedisLockNode nodeA;
+
+    private RedisLockNode nodeB;
+
+    @BeforeAll
+    public static void startRedis() {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    public static void stopRedis() {
+        redis.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        redis.flushAll();
+        nodeA = new RedisLockNode(redis.getConnectionFactory(), properties());
+        nodeB = new RedisLockNode(redis.getConnectionFactory(), properties());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    /**
+     * 兜底轮询间隔足够长，等待者只能由释放消息及时唤醒
+     */
+    private static RedisLockProperties properties() {
+        RedisLockProperties properties = new RedisLockProperties();
+        properties.setWaitPollInterval(10000);
+        properties.setBackoffBase(10000);
+        return properties;
+    }
+
+    @Test
+    public void lockStoresOwnerToken() {
+        RedisLock lock = nodeA.getLock();
+        lock.lock(NAME);
+        assertEquals(lock.ownerToken(), redis.getRedisTemplate().opsForValue().get(NAME));
+        assertTrue(lock.isHeldByCurrentThread(NAME));
+        lock.unlock(NAME);
+        assertFalse(redis.getRedisTemplate().hasKey(NAME));
+        assertFalse(lock.isHeldByCurrentThread(NAME));
+    }
+
+    @Test
+    public void sameTokenIsNotTakenOverByAcquire() throws Exception {
+        RedisLockProperties properties = properties();
+        properties.setNodeId("node-1");
+        try (RedisLockNode restarted = new RedisLockNode(redis.getConnectionFactory(), properties)) {
+            // 模拟重启前当前线程持有的锁
+            redis.getRedisTemplate().opsForValue().set(NAME, restarted.getLock().ownerToken(), 10, TimeUnit.SECONDS);
+            assertFalse(restarted.getLock().tryLock(NAME));
+            assertTrue(restarted.getLock().recover(NAME));
+            assertTrue(redis.getRedisTemplate().getExpire(NAME, TimeUnit.MILLISECONDS) > 10000);
+            assertFalse(nodeB.getLock().tryLock(NAME));
+            restarted.getLock().unlock(NAME);
+            assertFalse(redis.getRedisTemplate().hasKey(NAME));
+        }
+    }
+
+    @Test
+    public void recoverRejectsOtherOwner() {
+        nodeB.getLock().lock(NAME);
+        assertFalse(nodeA.getLock().recover(NAME));
+        assertFalse(nodeA.getLock().recover("test:missing"));
+        nodeB.getLock().unlock(NAME);
+    }
+
+    @Test
+    public void expiredLeaseIsNotTakenOver() throws Exception {
+        RedisLock lock = nodeA.getLock();
+        lock.lock(NAME, 200, TimeUnit.MILLISECONDS);
+        // 客户端认为租期已到，Redis 中的锁还在
+        redis.getRedisTemplate().expire(NAME, 10, TimeUnit.SECONDS);
+        Thread.sleep(300);
+        assertFalse(lock.tryLock(NAME));
+        redis.getRedisTemplate().delete(NAME);
+    }
+
+    @Test
+    public void reentrant() {
+        RedisLock lock = nodeA.getLock();
+        lock.lock(NAME);
+        assertTrue(lock.tryLock(NAME));
+        lock.unlock(NAME);
+        assertTrue(redis.getRedisTemplate().hasKey(NAME));
+        lock.unlock(NAME);
+        assertFalse(redis.getRedisTemplate().hasKey(NAME));
+    }
+
+    @Test
+    public void exclusiveAcrossNodes() {
+        nodeA.getLock().lock(NAME);
+        assertFalse(nodeB.getLock().tryLock(NAME));
+        nodeA.getLock().unlock(NAME);
+        assertTrue(nodeB.getLock().tryLock(NAME));
+        nodeB.getLock().unlock(NAME);
+    }
+
+    @Test
+    public void exclusiveAcrossThreads() throws Exception {
+        nodeA.getLock().lock(NAME);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertFalse(executor.submit(() -> nodeA.getLock().tryLock(NAME)).get());
+        } finally {
+            executor.shutdownNow();
+            nodeA.getLock().unlock(NAME);
+        }
+    }
+
+    @Test
+    public void waiterWokenByRelease() throws Exception {
+        nodeA.getLock().lock(NAME);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> waited = executor.submit(() -> {
+                long start = System.currentTimeMillis();
+                assertTrue(nodeB.getLock().tryLock(NAME, 5, TimeUnit.SECONDS));
+                nodeB.getLock().unlock(NAME);
+                return System.currentTimeMillis() - start;
+            });
+            redis.awaitSubscriber(RedisLockKeys.channel(NAME));
+            nodeA.getLock().unlock(NAME);
+            // 兜底轮询和退避都是 10 秒，只能是释放消息唤醒
+            assertTrue(waited.get(5, TimeUnit.SECONDS) < 2000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void timedTryLockTimesOut() {
+        nodeA.getLock().lock(NAME);
+        long start = System.currentTimeMillis();
+        assertFalse(nodeB.getLock().tryLock(NAME, 300, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 300);
+        nodeA.getLock().unlock(NAME);
+    }
+
+    @Test
+    public void leaseTimeExpiresWithoutRenewal() throws Exception {
+        nodeA.getLock().lock(NAME, 300, TimeUnit.MILLISECONDS);
+        long ttl = redis.getRedisTemplate().getExpire(NAME, TimeUnit.MILLISECONDS);
+        assertTrue(ttl > 0 && ttl <= 300, "ttl " + ttl);
+        Thread.sleep(600);
+        assertFalse(redis.getRedisTemplate().hasKey(NAME));
+        assertTrue(nodeB.getLock().tryLock(NAME));
+        nodeB.getLock().unlock(NAME);
+    }
+
+    @Test
+    public void watchdogRenews() throws Exception {
+        RedisLockProperties properties = properties();
+        properties.setLeaseTime(1000);
+        properties.setWatchdogTick(50);
+        try (RedisLockNode node = new RedisLockNode(redis.getConnectionFactory(), properties)) {
+            node.getLock().lock(NAME);
+            Thread.sleep(2500);
+            assertTrue(redis.getRedisTemplate().hasKey(NAME));
+            node.getLock().unlock(NAME);
+        }
+    }
+
+    @Test
+    public void stickyClaimByOtherThreadMovesOwnerToken() throws Exception {
+        RedisLockProperties properties = properties();
+        properties.setStickyLease(true);
+        properties.setStickyIdleTimeout(10000);
+        ExecutorService threadA = Executors.newSingleThreadExecutor();
+        ExecutorService threadB = Executors.newSingleThreadExecutor();
+        try (RedisLockNode node = new RedisLockNode(redis.getConnectionFactory(), properties);
+             RedisLockNode remote = new RedisLockNode(redis.getConnectionFactory(), properties)) {
+            RedisLock lock = node.getLock();
+            String tokenA = threadA.submit(() -> {
+                lock.lock(NAME);
+                lock.unlock(NAME);
+                return lock.ownerToken();
+            }).get();
+            // 本地释放后 Redis 中仍保留线程 A 的锁
+            assertEquals(tokenA, redis.getRedisTemplate().opsForValue().get(NAME));
+            String tokenB = threadB.submit(() -> {
+                assertTrue(lock.tryLock(NAME));
+                return lock.ownerToken();
+            }).get();
+            assertEquals(tokenB, redis.getRedisTemplate().opsForValue().get(NAME));
+            assertTrue(threadB.submit(() -> lock.isHeldByCurrentThread(NAME)).get());
+            // 线程 B 持有期间，线程 A 不能再次进入
+            assertFalse(threadA.submit(() -> lock.tryLock(NAME)).get());
+            assertFalse(threadA.submit(() -> lock.isHeldByCurrentThread(NAME)).get());
+            threadB.submit(() -> lock.unlock(NAME)).get();
+            // 其他节点请求后归还，等待持有节点订阅生效，否则请求消息会丢失
+            redis.awaitSubscriber(RedisLockKeys.channel(NAME));
+            // 请求节点的首次订阅是异步建立的，归还比订阅生效更快时释放消息会丢失，先用其他锁名称建立订阅
+            RedisLockNotifier.Waiter warmUp = remote.getNotifier().subscribe(NAME + ":warm-up", "warm-up");
+            redis.awaitSubscriber(RedisLockKeys.channel(NAME + ":warm-up"));
+            remote.getNotifier().unsubscribe(warmUp);
+            assertTrue(remote.getLock().tryLock(NAME, 5, TimeUnit.SECONDS));
+            remote.getLock().unlock(NAME);
+        } finally {
+            threadA.shutdownNow();
+            threadB.shutdownNow();
+        }
+    }
+
+    @Test
+    public void mutualExclusion() throws Exception {
+        int threads = 8;
+        int rounds = 50;
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger maxInside = new AtomicInteger();
+        AtomicInteger total = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                RedisLock lock = (i % 2 == 0 ? nodeA : nodeB).getLock();
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < rounds; j++) {
+                        lock.lock(NAME);
+                        try {
+                            maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                            total.incrementAndGet();
+                            inside.decrementAndGet();
+                        } finally {
+                            lock.unlock(NAME);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, maxInside.get());
+        assertEquals(threads * rounds, total.get());
+    }
+
+    @Test
+    public void durabilityOneWithoutReplicaIsUnreplicated() throws Exception {
+        RedisLockProperties properties = properties();
+        properties.getDurability().put(NAME, RedisLockDurability.ONE);
+        try (RedisLockNode node = new RedisLockNode(redis.getConnectionFactory(), properties)) {
+            // 没有从节点时不抛出异常，按确认不足的一次尝试处理
+            assertFalse(node.getLock().tryLock(NAME));
+            assertFalse(node.getLock().tryLock(NAME, 100, TimeUnit.MILLISECONDS));
+            assertFalse(redis.getRedisTemplate().hasKey(NAME));
+            RedisLockMetrics metrics = node.getMetrics();
+            assertTrue(metrics.getUnreplicatedCount(NAME, RedisLockDurability.ONE) >= 2);
+            assertEquals(metrics.getCount(NAME, RedisLockDurability.ONE),
+                    metrics.getUnreplicatedCount(NAME, RedisLockDurability.ONE));
+        }
+    }
+
+    @Test
+    public void metricsByNameAndDurability() {
+        RedisLock lock = nodeA.getLock();
+        lock.lock(NAME);
+        lock.unlock(NAME);
+        RedisLockMetrics metrics = nodeA.getMetrics();
+        assertEquals(1, metrics.getCount(NAME, RedisLockDurability.ASYNC));
+        assertEquals(0, metrics.getUnreplicatedCount(NAME, RedisLockDurability.ASYNC));
+        assertEquals(0, metrics.getCount(NAME, RedisLockDurability.ONE));
+        assertEquals(0, metrics.getCount("test:other", RedisLockDurability.ASYNC));
+        assertTrue(metrics.getNames().contains(NAME));
+    }
+
+    @Test
+    public void asyncHandle() throws Exception {
+        LockHandle handle = nodeA.getLock().lockAsync(NAME).get(5, TimeUnit.SECONDS);
+        assertNotNull(handle);
+        assertEquals(handle.getToken(), redis.getRedisTemplate().opsForValue().get(NAME));
+        assertNull(nodeB.getLock().tryLockAsync(NAME, 100, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS));
+        CompletableFuture<LockHandle> waiting = nodeB.getLock().tryLockAsync(NAME, 5, TimeUnit.SECONDS);
+        // 等待者订阅释放消息后再释放
+        redis.awaitSubscriber(RedisLockKeys.channel(NAME));
+        nodeA.getLock().unlockAsync(handle).get(5, TimeUnit.SECONDS);
+        LockHandle next = waiting.get(5, TimeUnit.SECONDS);
+        assertNotNull(next);
+        nodeB.getLock().unlockAsync(next).get(5, TimeUnit.SECONDS);
+        assertFalse(redis.getRedisTemplate().hasKey(NAME));
+    }
+}
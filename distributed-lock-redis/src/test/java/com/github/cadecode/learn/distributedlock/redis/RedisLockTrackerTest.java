@@ -0,0 +1,80 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/9
+ * @description RedisLockTracker 测试，只在单机配置下开启客户端跟踪
+ */
+public class RedisLockTrackerTest {
+
+    private static EmbeddedRedis redis;
+
+    @BeforeAll
+    public static void startRedis() {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    public static void stopRedis() {
+        redis.close();
+    }
+
+    private static RedisLockProperties properties() {
+        RedisLockProperties properties = new RedisLockProperties();
+        properties.setClientTracking(true);
+        return properties;
+    }
+
+    @Test
+    public void standaloneEnabled() throws Exception {
+        RedisLockProperties properties = properties();
+        RedisLockNotifier notifier = new RedisLockNotifier(redis.getConnectionFactory(), properties);
+        RedisLockTracker tracker = new RedisLockTracker(redis.getConnectionFactory(), properties, notifier);
+        tracker.afterPropertiesSet();
+        try {
+            assertTrue(tracker.isEnabled());
+            redis.getRedisTemplate().opsForValue().set("test:tracked", "value", 30, TimeUnit.SECONDS);
+            assertTrue(tracker.track("test:tracked"));
+            assertFalse(tracker.track("test:untracked"));
+        } finally {
+            tracker.destroy();
+        }
+    }
+
+    @Test
+    public void sentinelDisabled() {
+        RedisSentinelConfiguration config = new RedisSentinelConfiguration("mymaster",
+                Collections.singleton("localhost:" + redis.getPort()));
+        assertDisabled(new LettuceConnectionFactory(config));
+    }
+
+    @Test
+    public void clusterDisabled() {
+        RedisClusterConfiguration config = new RedisClusterConfiguration(
+                Collections.singletonList("localhost:" + redis.getPort()));
+        assertDisabled(new LettuceConnectionFactory(config));
+    }
+
+    /**
+     * 未初始化的连接工厂不会建立连接，跟踪关闭时也不会尝试连接
+     */
+    private static void assertDisabled(LettuceConnectionFactory connectionFactory) {
+        RedisLockTracker tracker = new RedisLockTracker(connectionFactory, properties(), null);
+        tracker.afterPropertiesSet();
+        assertFalse(tracker.isEnabled());
+        tracker.destroy();
+    }
+}
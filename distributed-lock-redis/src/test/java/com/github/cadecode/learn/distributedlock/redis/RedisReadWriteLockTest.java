@@ -0,0 +1,146 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/9
+ * @description RedisReadWriteLock 行为测试，两个模拟节点连接同一个嵌入式 Redis
+ */
+public class RedisReadWriteLockTest {
+
+    private static final String NAME = "test:rw";
+
+    private static EmbeddedRedis redis;
+
+    private RedisLockNode nodeA;
+
+    private RedisLockNode nodeB;
+
+    private RedisReadWriteLock lockA;
+
+    private RedisReadWriteLock lockB;
+
+    @BeforeAll
+    public static void startRedis() {
+        redis = EmbeddedRedis.start();
+    }
+
+    @AfterAll
+    public static void stopRedis() {
+        redis.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        redis.flushAll();
+        nodeA = new RedisLockNode(redis.getConnectionFactory(), properties());
+        nodeB = new RedisLockNode(redis.getConnectionFactory(), properties());
+        lockA = readWriteLock(nodeA);
+        lockB = readWriteLock(nodeB);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        nodeA.close();
+        nodeB.close();
+    }
+
+    private static RedisLockProperties properties() {
+        RedisLockProperties properties = new RedisLockProperties();
+        properties.setWaitPollInterval(10000);
+        properties.setBackoffBase(10000);
+        return properties;
+    }
+
+    private static RedisReadWriteLock readWriteLock(RedisLockNode node) {
+        return new RedisReadWriteLock(node.getRedisTemplate(), node.getProperties(), node.getNotifier(),
+                node.getWatchdog(), RedisLockNode.backoffStrategy(node.getProperties()));
+    }
+
+    @Test
+    public void readersShareAcrossNodes() {
+        assertTrue(lockA.readLock(NAME).tryLock());
+        assertFalse(lockB.writeLock(NAME).tryLock());
+        assertTrue(lockB.readLock(NAME).tryLock());
+        lockA.readLock(NAME).unlock();
+        lockB.readLock(NAME).unlock();
+        assertFalse(redis.getRedisTemplate().hasKey(NAME));
+        assertTrue(lockB.writeLock(NAME).tryLock());
+        lockB.writeLock(NAME).unlock();
+    }
+
+    @Test
+    public void writerExcludesReaders() throws Exception {
+        lockA.writeLock(NAME).lock();
+        assertFalse(lockB.readLock(NAME).tryLock());
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> reader = executor.submit(() -> {
+                boolean locked = lockB.readLock(NAME).tryLock(5, TimeUnit.SECONDS);
+                if (locked) {
+                    lockB.readLock(NAME).unlock();
+                }
+                return locked;
+            });
+            redis.awaitSubscriber(RedisLockKeys.channel(NAME));
+            lockA.writeLock(NAME).unlock();
+            assertTrue(reader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void writeLockDowngradesToRead() {
+        lockA.writeLock(NAME).lock();
+        assertTrue(lockA.readLock(NAME).tryLock());
+        lockA.writeLock(NAME).unlock();
+        assertEquals("read", redis.getRedisTemplate().opsForHash().get(NAME, "mode"));
+        assertFalse(lockB.writeLock(NAME).tryLock());
+        assertTrue(lockB.readLock(NAME).tryLock());
+        lockB.readLock(NAME).unlock();
+        lockA.readLock(NAME).unlock();
+        assertFalse(redis.getRedisTemplate().hasKey(NAME));
+    }
+
+    @Test
+    public void expiredReadersPurgedByServerTime() {
+        // 宕机节点的读锁，过期时间按 Redis 服务器时间已经过去
+        long now = redis.getRedisTemplate().execute((RedisCallback<Long>) connection -> connection.time());
+        redis.getRedisTemplate().opsForHash().put(NAME, "mode", "read");
+        redis.getRedisTemplate().opsForHash().put(NAME, "r:dead", "1");
+        redis.getRedisTemplate().opsForHash().put(NAME, "e:dead", String.valueOf(now - 1000));
+        redis.getRedisTemplate().expire(NAME, 30, TimeUnit.SECONDS);
+        assertTrue(lockA.writeLock(NAME).tryLock());
+        assertFalse(redis.getRedisTemplate().opsForHash().hasKey(NAME, "r:dead"));
+        lockA.writeLock(NAME).unlock();
+    }
+
+    @Test
+    public void liveReadersNotPurged() {
+        long now = redis.getRedisTemplate().execute((RedisCallback<Long>) connection -> connection.time());
+        redis.getRedisTemplate().opsForHash().put(NAME, "mode", "read");
+        redis.getRedisTemplate().opsForHash().put(NAME, "r:other", "1");
+        redis.getRedisTemplate().opsForHash().put(NAME, "e:other", String.valueOf(now + 30000));
+        redis.getRedisTemplate().expire(NAME, 30, TimeUnit.SECONDS);
+        assertFalse(lockA.writeLock(NAME).tryLock());
+        assertTrue(lockA.readLock(NAME).tryLock());
+        lockA.readLock(NAME).unlock();
+        assertTrue(redis.getRedisTemplate().opsForHash().hasKey(NAME, "r:other"));
+    }
+}
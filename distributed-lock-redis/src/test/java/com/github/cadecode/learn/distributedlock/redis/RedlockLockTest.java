@@ -0,0 +1,177 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import com.github.cadecode.learn.distributedlock.common.LockHandle;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/9
+ * @description RedlockLock 行为测试，三个相互独立的嵌入式 Redis 模拟三个主节点
+ * 节点变慢通过 DEBUG SLEEP 阻塞单个 Redis 实例模拟
+ */
+public class RedlockLockTest {
+
+    private static final String NAME = "test:redlock";
+
+    private static final int NODES = 3;
+
+    private static final long NODE_TIMEOUT = 200;
+
+    private static final List<EmbeddedRedis> redisList = new ArrayList<>();
+
+    private RedlockLock lock;
+
+    @BeforeAll
+    public static void startRedis() {
+        for (int i = 0; i < NODES; i++) {
+            redisList.add(EmbeddedRedis.start());
+        }
+    }
+
+    @AfterAll
+    public static void stopRedis() {
+        redisList.forEach(EmbeddedRedis::close);
+        redisList.clear();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        List<RedisConnectionFactory> connectionFactories = new ArrayList<>();
+        for (EmbeddedRedis redis : redisList) {
+            redis.flushAll();
+            connectionFactories.add(redis.getConnectionFactory());
+        }
+        RedisLockProperties properties = new RedisLockProperties();
+        properties.setRedlockNodeTimeout(NODE_TIMEOUT);
+        properties.setBackoffBase(50);
+        lock = new RedlockLock(connectionFactories, properties, RedisLockNode.backoffStrategy(properties));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        lock.destroy();
+    }
+
+    @Test
+    public void quorumSuccess() {
+        assertTrue(lock.tryLock(NAME));
+        for (EmbeddedRedis redis : redisList) {
+            assertEquals(lock.ownerToken(), redis.getRedisTemplate().opsForValue().get(NAME));
+        }
+        long validity = lock.validity(NAME);
+        assertTrue(validity > 0 && validity <= new RedisLockProperties().getLeaseTime());
+        lock.unlock(NAME);
+    }
+
+    @Test
+    public void quorumSuccessWithMinorityHeld() {
+        redisList.get(0).getRedisTemplate().opsForValue().set(NAME, "other", 30, TimeUnit.SECONDS);
+        assertTrue(lock.tryLock(NAME));
+        assertEquals("other", redisList.get(0).getRedisTemplate().opsForValue().get(NAME));
+        lock.unlock(NAME);
+        assertEquals("other", redisList.get(0).getRedisTemplate().opsForValue().get(NAME));
+    }
+
+    @Test
+    public void minorityFailureReleasesAcquiredNodes() {
+        redisList.get(0).getRedisTemplate().opsForValue().set(NAME, "other", 30, TimeUnit.SECONDS);
+        redisList.get(1).getRedisTemplate().opsForValue().set(NAME, "other", 30, TimeUnit.SECONDS);
+        assertFalse(lock.tryLock(NAME));
+        // 只在少数节点上加锁成功时，已加锁的节点也要释放
+        assertFalse(redisList.get(2).getRedisTemplate().hasKey(NAME));
+        assertEquals(0, lock.validity(NAME));
+    }
+
+    @Test
+    public void slowMinorityDoesNotBlockQuorum() throws Exception {
+        CompletableFuture<Void> sleeping = sleep(redisList.get(0), 1);
+        long start = System.currentTimeMillis();
+        assertTrue(lock.tryLock(NAME));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        lock.unlock(NAME);
+        sleeping.get(5, TimeUnit.SECONDS);
+        // 慢节点恢复后按顺序执行加锁和释放，不会留下锁
+        assertFalse(redisList.get(0).getRedisTemplate().hasKey(NAME));
+    }
+
+    @Test
+    public void slowMajorityHitsNodeTimeout() throws Exception {
+        CompletableFuture<Void> first = sleep(redisList.get(0), 1);
+        CompletableFuture<Void> second = sleep(redisList.get(1), 1);
+        long start = System.currentTimeMillis();
+        assertFalse(lock.tryLock(NAME));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        for (EmbeddedRedis redis : redisList) {
+            assertFalse(redis.getRedisTemplate().hasKey(NAME));
+        }
+    }
+
+    @Test
+    public void unlockReleasesAllNodes() {
+        assertTrue(lock.tryLock(NAME));
+        assertTrue(lock.tryLock(NAME));
+        lock.unlock(NAME);
+        for (EmbeddedRedis redis : redisList) {
+            assertTrue(redis.getRedisTemplate().hasKey(NAME));
+        }
+        lock.unlock(NAME);
+        for (EmbeddedRedis redis : redisList) {
+            assertFalse(redis.getRedisTemplate().hasKey(NAME));
+        }
+    }
+
+    @Test
+    public void asyncHandle() throws Exception {
+        LockHandle handle = lock.lockAsync(NAME).get(5, TimeUnit.SECONDS);
+        assertNotNull(handle);
+        assertTrue(lock.validity(handle) > 0);
+        assertNull(lock.tryLockAsync(NAME, 100, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS));
+        lock.unlockAsync(handle).get(5, TimeUnit.SECONDS);
+        assertEquals(0, lock.validity(handle));
+        for (EmbeddedRedis redis : redisList) {
+            assertFalse(redis.getRedisTemplate().hasKey(NAME));
+        }
+    }
+
+    /**
+     * 在单独的连接上阻塞 Redis 实例一段时间，返回前等待阻塞开始
+     */
+    private static CompletableFuture<Void> sleep(EmbeddedRedis redis, int seconds) throws InterruptedException {
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory("localhost", redis.getPort());
+        connectionFactory.afterPropertiesSet();
+        CompletableFuture<Void> future = CompletableFuture.runAsync(() -> {
+            try {
+                new StringRedisTemplate(connectionFactory)
+                        .execute((RedisCallback<Object>) connection -> connection.execute("DEBUG",
+                                "SLEEP".getBytes(StandardCharsets.UTF_8),
+                                String.valueOf(seconds).getBytes(StandardCharsets.UTF_8)));
+            } finally {
+                connectionFactory.destroy();
+            }
+        });
+        Thread.sleep(100);
+        return future;
+    }
+}
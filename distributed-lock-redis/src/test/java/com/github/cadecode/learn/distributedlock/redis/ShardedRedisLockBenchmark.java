@@ -0,0 +1,123 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/6
+ * @description 分片锁的吞吐量与分片数量的关系
+ * 大量线程轮流对不同的锁名称 tryLock、unlock，锁名称按 jump hash 均匀分散到各分片
+ * 需要本地启动多个 Redis 实例，地址通过 -Dredis.host、-Dredis.ports（逗号分隔）指定，默认 localhost:6379,6380,6381,6382
+ * 各实例应绑定不同的 CPU 核心，否则瓶颈在本机 CPU 而不是单个实例
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Threads(128)
+@Fork(1)
+public class ShardedRedisLockBenchmark {
+
+    /**
+     * 每个线程轮流使用的锁名称数量
+     */
+    private static final int NAMES_PER_THREAD = 64;
+
+    @Param({"1", "2", "4"})
+    private int shards;
+
+    private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+    private ShardedRedisLock lock;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String host = System.getProperty("redis.host", "localhost");
+        String[] ports = System.getProperty("redis.ports", "6379,6380,6381,6382").split(",");
+        if (ports.length < shards) {
+            throw new IllegalStateException("need " + shards + " redis instances, got " + ports.length);
+        }
+        for (int i = 0; i < shards; i++) {
+            LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(host,
+                    Integer.parseInt(ports[i].trim()));
+            connectionFactory.afterPropertiesSet();
+            connectionFactories.add(connectionFactory);
+        }
+        RedisLockProperties properties = new RedisLockProperties();
+        lock = new ShardedRedisLock(new ArrayList<RedisConnectionFactory>(connectionFactories), properties,
+                BackoffStrategy.of(properties.getBackoffType(), properties.getBackoffBase(),
+                        properties.getWaitPollInterval()));
+        lock.afterPropertiesSet();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        lock.destroy();
+        connectionFactories.forEach(LettuceConnectionFactory::destroy);
+        connectionFactories.clear();
+    }
+
+    /**
+     * 每个线程使用自己的一组锁名称，加锁总能成功，只衡量往返开销
+     */
+    @State(Scope.Thread)
+    public static class LockNames {
+
+        private final String[] names = new String[NAMES_PER_THREAD];
+
+        private int next;
+
+        public LockNames() {
+            String prefix = "benchmark:sharded:" + UUID.randomUUID() + ":";
+            for (int i = 0; i < names.length; i++) {
+                names[i] = prefix + i;
+            }
+        }
+
+        String next() {
+            String name = names[next];
+            next = (next + 1) % names.length;
+            return name;
+        }
+    }
+
+    @Benchmark
+    public boolean tryLock(LockNames lockNames) {
+        String name = lockNames.next();
+        boolean locked = lock.tryLock(name);
+        if (locked) {
+            lock.unlock(name);
+        }
+        return locked;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ShardedRedisLockBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
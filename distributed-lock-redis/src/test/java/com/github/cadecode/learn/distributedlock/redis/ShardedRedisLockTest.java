@@ -0,0 +1,71 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Cade Li
+ * @date 2022/3/6
+ * @description 分片路由测试，各节点必须把同一个锁名称路由到同一个分片
+ */
+public class ShardedRedisLockTest {
+
+    @Test
+    public void hashMatchesFnv1a() {
+        // FNV-1a 64 位标准测试向量
+        assertEquals(0xcbf29ce484222325L, ShardedRedisLock.hash(""));
+        assertEquals(0xaf63dc4c8601ec8cL, ShardedRedisLock.hash("a"));
+        assertEquals(0x85944171f73967e8L, ShardedRedisLock.hash("foobar"));
+    }
+
+    @Test
+    public void routingIsStable() {
+        // 路由结果变化意味着升级后各节点分片不一致，同一把锁会被不同分片重复授予
+        assertEquals(2, shard("order:1", 4));
+        assertEquals(3, shard("order:2", 4));
+        assertEquals(1, shard("user:42", 4));
+        assertEquals(6, shard("order:1", 16));
+        assertEquals(8, shard("order:2", 16));
+        assertEquals(15, shard("user:42", 16));
+    }
+
+    @Test
+    public void singleShardTakesAll() {
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, shard("lock:" + i, 1));
+        }
+    }
+
+    @Test
+    public void addingShardOnlyMovesToNewShard() {
+        int moved = 0;
+        for (int i = 0; i < 10000; i++) {
+            String name = "lock:" + i;
+            int before = shard(name, 4);
+            int after = shard(name, 5);
+            if (before != after) {
+                assertEquals(4, after);
+                moved++;
+            }
+        }
+        // 约 1/5 的锁名称迁移到新分片
+        assertTrue(moved > 1600 && moved < 2400, "moved " + moved);
+    }
+
+    @Test
+    public void distributionIsBalanced() {
+        int[] counts = new int[4];
+        for (int i = 0; i < 100000; i++) {
+            counts[shard("lock:" + i, 4)]++;
+        }
+        for (int count : counts) {
+            assertTrue(count > 24000 && count < 26000, "count " + count);
+        }
+    }
+
+    private static int shard(String name, int shards) {
+        return ShardedRedisLock.jumpHash(ShardedRedisLock.hash(name), shards);
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/21
+ * @description 时间轮与 ScheduledThreadPoolExecutor 的注册、取消开销对比
+ * 模拟看门狗场景：一次注册 N 个续期任务，随后全部取消（锁释放），任务不会真正到期
+ * 运行 main 方法或 java -cp ... org.openjdk.jmh.Main TimingWheelBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimingWheelBenchmark {
+
+    /**
+     * 续期间隔，与默认有效期的一半一致
+     */
+    private static final long DELAY = 15000;
+
+    private static final Runnable NOOP = () -> {
+    };
+
+    @Param({"10000", "100000", "1000000"})
+    private int timers;
+
+    private TimingWheel<Runnable> wheel;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        wheel = new TimingWheel<>(512, 100);
+        executor = new ScheduledThreadPoolExecutor(1);
+        // 取消时从队列中移除，否则队列会堆积已取消的任务
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int timingWheel() {
+        List<TimingWheel.Timeout<Runnable>> timeouts = new ArrayList<>(timers);
+        for (int i = 0; i < timers; i++) {
+            timeouts.add(wheel.add(NOOP, DELAY));
+        }
+        // 推进线程把新任务放入格子，与看门狗每个周期的行为一致
+        wheel.advance();
+        for (TimingWheel.Timeout<Runnable> timeout : timeouts) {
+            timeout.cancel();
+        }
+        return timeouts.size();
+    }
+
+    @Benchmark
+    public int scheduledExecutor() {
+        List<ScheduledFuture<?>> futures = new ArrayList<>(timers);
+        for (int i = 0; i < timers; i++) {
+            futures.add(executor.schedule(NOOP, DELAY, TimeUnit.MILLISECONDS));
+        }
+        for (ScheduledFuture<?> future : futures) {
+            future.cancel(false);
+        }
+        return futures.size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TimingWheelBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
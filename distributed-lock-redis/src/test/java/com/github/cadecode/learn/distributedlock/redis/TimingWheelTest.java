@@ -0,0 +1,102 @@
+package com.github.cadecode.learn.distributedlock.redis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Cade Li
+ * @date 2022/2/21
+ * @description 哈希时间轮测试，延迟 delay 的任务在第 ceil(delay / tick) + 1 次推进时到期
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void rejectNonPositive() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(0, 100));
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(8, 0));
+    }
+
+    @Test
+    public void zeroDelayExpiresOnNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(8, 100);
+        wheel.add("a", 0);
+        assertEquals(Collections.singletonList("a"), wheel.advance());
+        assertTrue(wheel.advance().isEmpty());
+    }
+
+    @Test
+    public void expiresAfterDelay() {
+        TimingWheel<String> wheel = new TimingWheel<>(8, 100);
+        wheel.add("a", 250);
+        assertEquals(4, advanceUntil(wheel, "a"));
+    }
+
+    @Test
+    public void expiresAfterMultipleRounds() {
+        // 格数 4，延迟 10 格，需要转两圈以上
+        TimingWheel<String> wheel = new TimingWheel<>(4, 100);
+        wheel.add("a", 1000);
+        assertEquals(11, advanceUntil(wheel, "a"));
+    }
+
+    @Test
+    public void nonPowerOfTwoWheelSize() {
+        TimingWheel<String> wheel = new TimingWheel<>(5, 100);
+        wheel.add("a", 500);
+        wheel.add("b", 800);
+        assertEquals(6, advanceUntil(wheel, "a"));
+        assertEquals(3, advanceUntil(wheel, "b"));
+    }
+
+    @Test
+    public void delayIsRelativeToCurrentTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(8, 100);
+        for (int i = 0; i < 5; i++) {
+            wheel.advance();
+        }
+        wheel.add("a", 300);
+        assertEquals(4, advanceUntil(wheel, "a"));
+    }
+
+    @Test
+    public void cancelBeforeTransfer() {
+        TimingWheel<String> wheel = new TimingWheel<>(8, 100);
+        TimingWheel.Timeout<String> timeout = wheel.add("a", 0);
+        timeout.cancel();
+        assertTrue(timeout.isCancelled());
+        assertTrue(wheel.advance().isEmpty());
+    }
+
+    @Test
+    public void cancelAfterTransfer() {
+        TimingWheel<String> wheel = new TimingWheel<>(8, 100);
+        TimingWheel.Timeout<String> cancelled = wheel.add("a", 200);
+        wheel.add("b", 200);
+        // 第一次推进把任务放入格子
+        assertTrue(wheel.advance().isEmpty());
+        cancelled.cancel();
+        assertTrue(wheel.advance().isEmpty());
+        assertEquals(Collections.singletonList("b"), wheel.advance());
+    }
+
+    /**
+     * 推进时间轮直到任务到期
+     *
+     * @return 推进次数
+     */
+    private static int advanceUntil(TimingWheel<String> wheel, String task) {
+        for (int i = 1; i <= 1000; i++) {
+            List<String> expired = wheel.advance();
+            if (expired.contains(task)) {
+                return i;
+            }
+        }
+        throw new AssertionError("task " + task + " never expired");
+    }
+}